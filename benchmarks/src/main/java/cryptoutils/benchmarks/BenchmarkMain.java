@@ -0,0 +1,29 @@
+package cryptoutils.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once for every thread count, with the GC profiler attached so that
+ * the allocation rate is reported next to the throughput.
+ * Usage: java -Dthreads=1,4,8 -jar benchmarks.jar [benchmark regexp]
+ * One JSON result file per thread count (jmh-result-t[threads].json) is written in the working directory.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        String include = (args.length > 0)?args[0]:"cryptoutils.benchmarks.*";
+        for(String t : System.getProperty("threads","1,4").split(",")) {
+            int threads = Integer.parseInt(t.trim());
+            ChainedOptionsBuilder opts = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-t"+threads+".json");
+            new Runner(opts.build()).run();
+        }
+    }
+}
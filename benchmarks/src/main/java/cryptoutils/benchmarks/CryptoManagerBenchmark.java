@@ -0,0 +1,61 @@
+package cryptoutils.benchmarks;
+
+import cryptoutils.cipherutils.AesKey;
+import cryptoutils.cipherutils.CryptoManager;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CryptoManagerBenchmark {
+    @Param({"64","1024","16384","1048576"})
+    public int size;
+    private byte[] key;
+    private AesKey aesKey;
+    private byte[] plainText;
+    private byte[] cbcCipherText;
+    private byte[] gcmCipherText;
+
+    @Setup
+    public void setup() throws Exception {
+        key = CryptoManager.generateAES256RandomSecretKey();
+        aesKey = new AesKey(key);
+        plainText = Fixtures.randomBytes(size);
+        cbcCipherText = CryptoManager.encryptCBC(plainText,key);
+        gcmCipherText = CryptoManager.encryptGCM(plainText,null,aesKey);
+    }
+
+    @Benchmark
+    public byte[] encryptCBC() throws Exception {
+        return CryptoManager.encryptCBC(plainText,key);
+    }
+
+    @Benchmark
+    public byte[] encryptCBCSessionKey() throws Exception {
+        return CryptoManager.encryptCBC(plainText,aesKey);
+    }
+
+    @Benchmark
+    public byte[] decryptCBC() throws Exception {
+        return CryptoManager.decryptCBC(cbcCipherText,key);
+    }
+
+    @Benchmark
+    public byte[] decryptCBCSessionKey() throws Exception {
+        return CryptoManager.decryptCBC(cbcCipherText,aesKey);
+    }
+
+    @Benchmark
+    public byte[] encryptGCM() throws Exception {
+        return CryptoManager.encryptGCM(plainText,null,aesKey);
+    }
+
+    @Benchmark
+    public byte[] decryptGCM() throws Exception {
+        return CryptoManager.decryptGCM(gcmCipherText,null,aesKey);
+    }
+}
@@ -0,0 +1,58 @@
+package cryptoutils.benchmarks;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Random;
+
+/**
+ * Shared fixtures of the benchmarks. The certificates and keys under resources are test-only material:
+ * a CA (BenchCA) and two peers (alice, bob) whose certificates are signed by it.
+ */
+final class Fixtures {
+    private Fixtures() {}
+
+    /**
+     * @param size the number of bytes
+     * @return deterministic pseudo-random bytes
+     */
+    static byte[] randomBytes(int size) {
+        byte[] b = new byte[size];
+        new Random(size).nextBytes(b);
+        return b;
+    }
+
+    /**
+     * Redirects System.out to a stream discarding everything, so that the progress messages printed by the library
+     * are not measured as part of the benchmarks
+     * @return the previous System.out, to be restored at the end of the trial
+     */
+    static PrintStream silenceStdout() {
+        PrintStream previous = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b,int off,int len) {
+            }
+        }));
+        return previous;
+    }
+
+    /**
+     * Copies a resource of this package to a temporary file, since the library reads keys and certificates from files
+     * @param name the resource name
+     * @return the path of the temporary file
+     * @throws IOException 
+     */
+    static String resourceFile(String name) throws IOException {
+        Path tmp = Files.createTempFile("cryptoutils-bench-",name);
+        tmp.toFile().deleteOnExit();
+        try(InputStream in = Fixtures.class.getResourceAsStream(name)) {
+            if(in == null) throw new FileNotFoundException(name);
+            Files.copy(in,tmp,StandardCopyOption.REPLACE_EXISTING);
+        }
+        return tmp.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package cryptoutils.benchmarks;
+
+import cryptoutils.hashutils.HashManager;
+import cryptoutils.hashutils.MacKey;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashManagerBenchmark {
+    private static final String MAC_ALG = "HmacSHA256";
+    @Param({"64","1024","16384","1048576"})
+    public int size;
+    private byte[] data;
+    private byte[] key;
+    private MacKey macKey;
+    private byte[] mac;
+    private byte[] fingerprint;
+
+    @Setup
+    public void setup() throws Exception {
+        data = Fixtures.randomBytes(size);
+        key = Fixtures.randomBytes(32);
+        macKey = new MacKey(key,MAC_ALG);
+        mac = HashManager.doMAC(data,key,MAC_ALG);
+        fingerprint = HashManager.doHash(data,"SHA-256");
+    }
+
+    @Benchmark
+    public byte[] doHash() throws Exception {
+        return HashManager.doHash(data,"SHA-256");
+    }
+
+    @Benchmark
+    public byte[] doMAC() throws Exception {
+        return HashManager.doMAC(data,key,MAC_ALG);
+    }
+
+    @Benchmark
+    public byte[] doMACSessionKey() throws Exception {
+        return HashManager.doMAC(data,macKey);
+    }
+
+    @Benchmark
+    public boolean compareMAC() throws Exception {
+        return HashManager.compareMAC(data,mac,key,MAC_ALG);
+    }
+
+    @Benchmark
+    public boolean compareMACSessionKey() throws Exception {
+        return HashManager.compareMAC(data,mac,macKey);
+    }
+
+    @Benchmark
+    public String toHexString() {
+        return HashManager.toHexString(fingerprint);
+    }
+}
@@ -0,0 +1,44 @@
+package cryptoutils.benchmarks;
+
+import cryptoutils.messagebuilder.MessageBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageBuilderBenchmark {
+    @Param({"64","1024","16384","1048576"})
+    public int size;
+    private byte[] first;
+    private byte[] second;
+
+    @Setup
+    public void setup() {
+        first = Fixtures.randomBytes(size);
+        second = Fixtures.randomBytes(32);
+    }
+
+    @Benchmark
+    public byte[] concatBytes() {
+        return MessageBuilder.concatBytes(first,second);
+    }
+
+    @Benchmark
+    public byte[] extractFirstBytes() {
+        return MessageBuilder.extractFirstBytes(first,first.length-16);
+    }
+
+    @Benchmark
+    public byte[] extractLastBytes() {
+        return MessageBuilder.extractLastBytes(first,16);
+    }
+
+    @Benchmark
+    public byte[] insertTimestamp() {
+        return MessageBuilder.insertTimestamp(first);
+    }
+}
@@ -0,0 +1,42 @@
+package cryptoutils.benchmarks;
+
+import cryptoutils.cipherutils.CertificateManager;
+import cryptoutils.cipherutils.CryptoManager;
+import cryptoutils.cipherutils.RSAPadding;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RSABenchmark {
+    @Param({"PKCS1","OAEP_SHA256"})
+    public RSAPadding padding;
+    private PublicKey publicKey;
+    private PrivateKey privateKey;
+    private byte[] secretKey;
+    private byte[] encryptedSecretKey;
+
+    @Setup
+    public void setup() throws Exception {
+        publicKey = CertificateManager.readCertFromFile(Fixtures.resourceFile("bob.pem")).getPublicKey();
+        privateKey = CryptoManager.readRSAPrivateKeyFromPEMFile(Fixtures.resourceFile("bob.key"));
+        secretKey = CryptoManager.generateAES256RandomSecretKey();
+        encryptedSecretKey = CryptoManager.encryptRSA(secretKey,publicKey,padding);
+    }
+
+    @Benchmark
+    public byte[] encryptRSA() throws Exception {
+        return CryptoManager.encryptRSA(secretKey,publicKey,padding);
+    }
+
+    @Benchmark
+    public byte[] decryptRSA() throws Exception {
+        return CryptoManager.decryptRSA(encryptedSecretKey,privateKey,padding);
+    }
+}
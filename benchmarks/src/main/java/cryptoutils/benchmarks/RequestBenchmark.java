@@ -0,0 +1,54 @@
+package cryptoutils.benchmarks;
+
+import cryptoutils.cipherutils.CertificateManager;
+import cryptoutils.cipherutils.CryptoManager;
+import cryptoutils.communication.Request;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+    private Certificate authority;
+    private Certificate issuerCertificate;
+    private PrivateKey issuerKey;
+    private PublicKey recipientPublicKey;
+    private PrivateKey recipientKey;
+    private byte[] encrypted;
+    private Request decoded;
+
+    @Setup
+    public void setup() throws Exception {
+        authority = CertificateManager.readCertFromFile(Fixtures.resourceFile("ca.pem"));
+        issuerCertificate = CertificateManager.readCertFromFile(Fixtures.resourceFile("alice.pem"));
+        issuerKey = CryptoManager.readRSAPrivateKeyFromPEMFile(Fixtures.resourceFile("alice.key"));
+        recipientPublicKey = CertificateManager.readCertFromFile(Fixtures.resourceFile("bob.pem")).getPublicKey();
+        recipientKey = CryptoManager.readRSAPrivateKeyFromPEMFile(Fixtures.resourceFile("bob.key"));
+        encrypted = encode();
+        decoded = decode();
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        Request r = new Request("alice","bob",issuerCertificate,CryptoManager.generateAES256RandomSecretKey());
+        r.sign(issuerKey);
+        return r.getEncrypted(recipientPublicKey);
+    }
+
+    @Benchmark
+    public Request decode() throws Exception {
+        return Request.fromEncryptedRequest(encrypted,recipientKey);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return decoded.verify(authority,"alice");
+    }
+}
@@ -0,0 +1,91 @@
+package cryptoutils.benchmarks;
+
+import cryptoutils.cipherutils.AesKey;
+import cryptoutils.cipherutils.CryptoManager;
+import cryptoutils.communication.SecureEndpoint;
+import cryptoutils.hashutils.MacKey;
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loopback round trips: a message is sent into an in-memory object stream and received back from it.
+ * The progress messages SecureEndpoint prints to System.out are discarded during the trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecureEndpointBenchmark {
+    @Param({"64","1024","16384"})
+    public int size;
+    private byte[] data;
+    private byte[] encKey;
+    private byte[] authKey;
+    private AesKey aesKey;
+    private MacKey macKey;
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() {
+        data = Fixtures.randomBytes(size);
+        encKey = CryptoManager.generateAES256RandomSecretKey();
+        authKey = Fixtures.randomBytes(32);
+        aesKey = new AesKey(encKey);
+        macKey = new MacKey(authKey,SecureEndpoint.AUTH_ALG);
+        stdout = Fixtures.silenceStdout();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void roundTrip(Blackhole bh) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size+256);
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            check(SecureEndpoint.secureSend(data,out,encKey,authKey));
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            bh.consume(received(SecureEndpoint.secureReceive(in,encKey,authKey)));
+        }
+    }
+
+    @Benchmark
+    public void roundTripSessionKeys(Blackhole bh) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size+256);
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            check(SecureEndpoint.secureSend(data,out,aesKey,macKey));
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            bh.consume(received(SecureEndpoint.secureReceive(in,aesKey,macKey)));
+        }
+    }
+
+    @Benchmark
+    public void roundTripAEAD(Blackhole bh) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size+256);
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            check(SecureEndpoint.secureSendAEAD(data,out,aesKey));
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            bh.consume(received(SecureEndpoint.secureReceiveAEAD(in,aesKey)));
+        }
+    }
+
+    /**
+     * SecureEndpoint reports failures by return value: a failed exchange must fail the benchmark, not be timed
+     */
+    private static void check(boolean sent) {
+        if(!sent) throw new IllegalStateException("secureSend failed");
+    }
+
+    private byte[] received(byte[] plainText) {
+        if(plainText == null || plainText.length != size) throw new IllegalStateException("secureReceive failed");
+        return plainText;
+    }
+}
@@ -0,0 +1,42 @@
+package cryptoutils.benchmarks;
+
+import cryptoutils.cipherutils.SignatureManager;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignatureAlgorithmBenchmark {
+    @Param({"RSA","EC","Ed25519"})
+    public String keyType;
+    private byte[] data;
+    private KeyPair keyPair;
+    private byte[] signature;
+
+    @Setup
+    public void setup() throws Exception {
+        data = Fixtures.randomBytes(256);
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance(keyType);
+        if(keyType.equals("RSA")) kpg.initialize(2048);
+        else if(keyType.equals("EC")) kpg.initialize(new ECGenParameterSpec("secp256r1"));
+        keyPair = kpg.generateKeyPair();
+        signature = SignatureManager.sign(data,keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        return SignatureManager.sign(data,keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return SignatureManager.verify(data,signature,keyPair.getPublic());
+    }
+}
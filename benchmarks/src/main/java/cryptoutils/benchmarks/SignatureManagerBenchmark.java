@@ -0,0 +1,48 @@
+package cryptoutils.benchmarks;
+
+import cryptoutils.cipherutils.CertificateManager;
+import cryptoutils.cipherutils.CryptoManager;
+import cryptoutils.cipherutils.SignatureManager;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignatureManagerBenchmark {
+    private static final String ALG = "SHA256withRSA";
+    @Param({"64","16384"})
+    public int size;
+    private byte[] data;
+    private PrivateKey privateKey;
+    private Certificate certificate;
+    private byte[] signature;
+
+    @Setup
+    public void setup() throws Exception {
+        data = Fixtures.randomBytes(size);
+        privateKey = CryptoManager.readRSAPrivateKeyFromPEMFile(Fixtures.resourceFile("alice.key"));
+        certificate = CertificateManager.readCertFromFile(Fixtures.resourceFile("alice.pem"));
+        signature = SignatureManager.sign(data,ALG,privateKey);
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        return SignatureManager.sign(data,ALG,privateKey);
+    }
+
+    @Benchmark
+    public boolean verifyWithPublicKey() {
+        return SignatureManager.verify(data,signature,ALG,certificate.getPublicKey());
+    }
+
+    @Benchmark
+    public boolean verifyWithCertificate() {
+        return SignatureManager.verify(data,signature,ALG,certificate);
+    }
+}
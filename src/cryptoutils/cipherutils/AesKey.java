@@ -0,0 +1,61 @@
+package cryptoutils.cipherutils;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Session handle of an AES secret key, meant to be created once per session and used for every message.
+ * The SecretKeySpec is built only once and each thread keeps its own Cipher objects bound to this key,
+ * so the provider does not repeat the AES key expansion when the same key is used again.
+ */
+public class AesKey {
+    private final SecretKeySpec keySpec;
+    private final ThreadLocal<HashMap<String,Cipher>> ciphers = new ThreadLocal<>();
+
+    /**
+     * @param key the 16, 24 or 32 bytes of the AES secret key
+     */
+    public AesKey(byte[] key) {
+        if(key == null || (key.length != 16 && key.length != 24 && key.length != 32))
+            throw new IllegalArgumentException("invalid AES key length");
+        this.keySpec = new SecretKeySpec(key,"AES");
+    }
+
+    /**
+     * @return the SecretKeySpec object representing the key
+     */
+    public SecretKeySpec getKeySpec() {
+        return keySpec;
+    }
+
+    /**
+     * @return a copy of the raw key bytes
+     */
+    public byte[] getEncoded() {
+        return keySpec.getEncoded();
+    }
+
+    /**
+     * Returns the Cipher object of the calling thread dedicated to this key and to the given transformation
+     * @param transformation the transformation
+     * @return the Cipher object, it must be initialized with this key before use
+     * @throws NoSuchAlgorithmException
+     * @throws NoSuchPaddingException
+     */
+    Cipher getCipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        HashMap<String,Cipher> map = ciphers.get();
+        if(map == null) {
+            map = new HashMap<>();
+            ciphers.set(map);
+        }
+        Cipher cipher = map.get(transformation);
+        if(cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            map.put(transformation, cipher);
+        }
+        return cipher;
+    }
+}
@@ -0,0 +1,173 @@
+package cryptoutils.cipherutils;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Verifies many signatures at once. Signatures are grouped by algorithm and key (or certificate), so that each group
+ * initializes a single Signature object and reuses it for all its entries; groups are split into slices verified in
+ * parallel on an executor. The result is a bitmap where bit i is set if and only if the i-th added signature is valid.
+ * Instances are not thread-safe: entries must be added by a single thread.
+ */
+public class BatchVerifier {
+    private static final int SLICE_SIZE = 64;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<GroupKey,List<Integer>> groups = new LinkedHashMap<>();
+
+    /**
+     * Adds a signature to be verified with a PublicKey
+     * @param data  the signed data
+     * @param sign  the signature
+     * @param alg   the algorithm to be used
+     * @param key   the PublicKey object to be used
+     * @return the index of the entry in the result bitmap
+     */
+    public int add(byte[] data,byte[] sign,String alg,PublicKey key) {
+        return add(new Entry(data,sign),new GroupKey(alg,key));
+    }
+
+    /**
+     * Adds a signature to be verified with a Certificate object
+     * @param data  the signed data
+     * @param sign  the signature
+     * @param alg   the algorithm to be used
+     * @param cert  the certificate used to verify the signature
+     * @return the index of the entry in the result bitmap
+     */
+    public int add(byte[] data,byte[] sign,String alg,Certificate cert) {
+        return add(new Entry(data,sign),new GroupKey(alg,cert));
+    }
+
+    /**
+     * @return the number of signatures added
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Discards all the signatures added
+     */
+    public void clear() {
+        entries.clear();
+        groups.clear();
+    }
+
+    /**
+     * Verifies all the signatures on the calling thread
+     * @return the bitmap of the valid signatures
+     */
+    public BitSet verify() {
+        BitSet result = new BitSet(entries.size());
+        for(Map.Entry<GroupKey,List<Integer>> g : groups.entrySet())
+            result.or(verifySlice(g.getKey(),g.getValue()));
+        return result;
+    }
+
+    /**
+     * Verifies all the signatures fanning out the groups, in slices, across the executor
+     * @param executor the executor running the verifications
+     * @return the bitmap of the valid signatures
+     * @throws InterruptedException
+     */
+    public BitSet verify(ExecutorService executor) throws InterruptedException {
+        List<Callable<BitSet>> tasks = new ArrayList<>();
+        for(Map.Entry<GroupKey,List<Integer>> g : groups.entrySet()) {
+            final GroupKey key = g.getKey();
+            List<Integer> indexes = g.getValue();
+            for(int from = 0; from < indexes.size(); from+=SLICE_SIZE) {
+                final List<Integer> slice = indexes.subList(from,Math.min(indexes.size(),from+SLICE_SIZE));
+                tasks.add(() -> verifySlice(key,slice));
+            }
+        }
+        BitSet result = new BitSet(entries.size());
+        for(Future<BitSet> f : executor.invokeAll(tasks)) {
+            try {
+                result.or(f.get());
+            } catch(ExecutionException e) {
+                // verifySlice fails per entry, a slice fails as a whole only on an Error
+            }
+        }
+        return result;
+    }
+
+    private int add(Entry e,GroupKey key) {
+        int index = entries.size();
+        entries.add(e);
+        List<Integer> group = groups.get(key);
+        if(group == null) {
+            group = new ArrayList<>();
+            groups.put(key,group);
+        }
+        group.add(index);
+        return index;
+    }
+
+    private BitSet verifySlice(GroupKey key,List<Integer> slice) {
+        BitSet result = new BitSet();
+        Signature sig;
+        try {
+            sig = key.newVerifier();
+        } catch(GeneralSecurityException e) {
+            return result;
+        }
+        for(int index : slice) {
+            Entry e = entries.get(index);
+            try {
+                sig.update(e.data);
+                if(sig.verify(e.sign)) result.set(index);
+            } catch(GeneralSecurityException | RuntimeException ex) {
+                // only this entry is invalid (e.g. a ProviderException on a malformed signature), the verifier is reset
+                try {
+                    sig = key.newVerifier();
+                } catch(GeneralSecurityException ex2) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static class Entry {
+        final byte[] data;
+        final byte[] sign;
+
+        Entry(byte[] data,byte[] sign) {
+            this.data = data;
+            this.sign = sign;
+        }
+    }
+
+    private static class GroupKey {
+        final String alg;
+        final Object key;
+
+        GroupKey(String alg,Object key) {
+            this.alg = alg;
+            this.key = key;
+        }
+
+        Signature newVerifier() throws GeneralSecurityException {
+            Signature sig = Signature.getInstance(alg);
+            if(key instanceof Certificate) sig.initVerify((Certificate)key);
+            else sig.initVerify((PublicKey)key);
+            return sig;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof GroupKey)) return false;
+            GroupKey k = (GroupKey)o;
+            return alg.equals(k.alg) && key.equals(k.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return alg.hashCode()*31+key.hashCode();
+        }
+    }
+}
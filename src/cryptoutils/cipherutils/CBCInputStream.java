@@ -0,0 +1,94 @@
+package cryptoutils.cipherutils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+
+/**
+ * InputStream decrypting a fixed amount of AES/CBC ciphertext read from a channel in chunks of fixed size.
+ * The Cipher object is taken from CipherPool and given back when the stream is closed.
+ */
+class CBCInputStream extends InputStream {
+    private final ReadableByteChannel in;
+    private final Cipher cipher;
+    private long remaining;
+    private final byte[] inBuffer = new byte[CBCOutputStream.CHUNK_SIZE];
+    private final byte[] outBuffer = new byte[CBCOutputStream.CHUNK_SIZE+32];
+    private int outPos = 0;
+    private int outLen = 0;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    /**
+     * @param in        the channel, positioned at the beginning of the ciphertext
+     * @param cipher    a pooled Cipher object already initialized for decryption
+     * @param length    the number of ciphertext bytes to read, IV excluded
+     */
+    CBCInputStream(ReadableByteChannel in,Cipher cipher,long length) {
+        this.in = in;
+        this.cipher = cipher;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b,0,1);
+        return (n < 0)?-1:(b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b,int off,int len) throws IOException {
+        if(closed) throw new IOException("stream closed");
+        if(len == 0) return 0;
+        while(outPos == outLen) {
+            if(finished) return -1;
+            fill();
+        }
+        int n = Math.min(len,outLen-outPos);
+        System.arraycopy(outBuffer,outPos,b,off,n);
+        outPos+=n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return outLen-outPos;
+    }
+
+    private void fill() throws IOException {
+        try {
+            outPos = 0;
+            if(remaining == 0) {
+                outLen = cipher.doFinal(outBuffer,0);
+                finished = true;
+                return;
+            }
+            ByteBuffer chunk = ByteBuffer.wrap(inBuffer,0,(int)Math.min(inBuffer.length,remaining));
+            int n = in.read(chunk);
+            if(n < 0) throw new EOFException("truncated ciphertext");
+            remaining-=n;
+            outLen = cipher.update(inBuffer,0,n,outBuffer,0);
+        } catch(GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Gives the Cipher object back to the pool, without closing the underlying channel
+     */
+    void finish() {
+        if(closed) return;
+        closed = true;
+        CipherPool.release(cipher);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed) return;
+        finish();
+        in.close();
+    }
+}
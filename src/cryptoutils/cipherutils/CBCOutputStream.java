@@ -0,0 +1,86 @@
+package cryptoutils.cipherutils;
+
+import java.io.*;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+
+/**
+ * OutputStream encrypting everything written to it by means of AES/CBC in chunks of fixed size.
+ * The IV is appended after the last ciphertext block, so the output has the same format of CryptoManager.encryptCBC.
+ * The Cipher object is taken from CipherPool and given back when the stream is finished.
+ */
+class CBCOutputStream extends FilterOutputStream {
+    static final int CHUNK_SIZE = 64*1024;
+    private final Cipher cipher;
+    private final byte[] iv;
+    private final byte[] buffer = new byte[CHUNK_SIZE+16];
+    private boolean finished = false;
+
+    /**
+     * @param out       the underlying stream
+     * @param cipher    a pooled Cipher object already initialized for encryption with iv
+     * @param iv        the IV bytes, written at the end of the stream
+     */
+    CBCOutputStream(OutputStream out,Cipher cipher,byte[] iv) {
+        super(out);
+        this.cipher = cipher;
+        this.iv = iv;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b},0,1);
+    }
+
+    @Override
+    public void write(byte[] b,int off,int len) throws IOException {
+        if(finished) throw new IOException("stream already finished");
+        try {
+            while(len > 0) {
+                int n = Math.min(len,CHUNK_SIZE);
+                int written = cipher.update(b,off,n,buffer,0);
+                out.write(buffer,0,written);
+                off+=n; len-=n;
+            }
+        } catch(GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes the last ciphertext block and the IV, without closing the underlying stream
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        if(finished) return;
+        finished = true;
+        try {
+            int written = cipher.doFinal(buffer,0);
+            out.write(buffer,0,written);
+            out.write(iv);
+        } catch(GeneralSecurityException e) {
+            throw new IOException(e);
+        } finally {
+            CipherPool.release(cipher);
+        }
+    }
+
+    /**
+     * Gives back the Cipher without writing the last block and the IV, so that an interrupted stream cannot be
+     * mistaken for a complete ciphertext
+     */
+    void abort() {
+        if(finished) return;
+        finished = true;
+        CipherPool.release(cipher);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package cryptoutils.cipherutils;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.cert.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * In-memory index of the CRLs of a set of issuers, to check revocation in constant time instead of scanning an X509CRL.
+ * Every CRL is parsed once into a hash set of the revoked serial numbers of its issuer; lists longer than
+ * BLOOM_FILTER_THRESHOLD entries are fronted by a Bloom filter, so that the lookups of certificates that are not revoked
+ * (the common case) are answered from a compact bitmap without probing the set.
+ * The index is an immutable snapshot replaced atomically by update: lookups never block and always see either the old
+ * or the new CRL of an issuer. Updating a CRL drops the certificate verifications cached by CertificateManager for
+ * its issuer; the paths cached by ChainValidator need no invalidation, since their revocation is checked on every lookup.
+ * Lookups fail closed: when the installed CRL of the issuer is stale (its nextUpdate date has passed) the revocation
+ * status is unknown and the certificate is reported as revoked, until a fresh CRL is installed. A certificate whose
+ * issuer has no CRL installed is reported as not revoked, unless the index is strict.
+ */
+public class CRLIndex implements RevocationChecker {
+    public static final int BLOOM_FILTER_THRESHOLD = 1024;
+    private static final int BLOOM_BITS_PER_ENTRY = 16;
+    private static final int BLOOM_HASHES = 7;
+    private volatile Map<X500Principal,IssuerCRL> snapshot = Collections.emptyMap();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong filtered = new AtomicLong();
+    private final boolean strict;
+
+    /**
+     * Index reporting the certificates of the issuers without an installed CRL as not revoked
+     */
+    public CRLIndex() {
+        this(false);
+    }
+
+    /**
+     * @param strict whether the certificates of the issuers without an installed CRL are reported as revoked
+     */
+    public CRLIndex(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * Installs the CRL of an issuer, replacing its previous one unless the new CRL is older
+     * @param crl       the CRL
+     * @param issuer    the certificate of the CRL issuer, used to verify the CRL signature
+     * @return whether the CRL has been installed, false if it is older than the installed one
+     * @throws CRLException if the CRL has not been issued by issuer or its signature is not valid
+     */
+    public boolean update(X509CRL crl,X509Certificate issuer) throws CRLException {
+        if(!crl.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) throw new CRLException("the CRL has not been issued by "+issuer.getSubjectX500Principal());
+        try {
+            crl.verify(issuer.getPublicKey());
+        } catch(Exception e) {
+            throw new CRLException("invalid CRL signature");
+        }
+        IssuerCRL entry = new IssuerCRL(crl);
+        synchronized(this) {
+            IssuerCRL current = snapshot.get(entry.issuer);
+            if(current != null && current.thisUpdate > entry.thisUpdate) return false;
+            Map<X500Principal,IssuerCRL> next = new HashMap<>(snapshot);
+            next.put(entry.issuer,entry);
+            snapshot = Collections.unmodifiableMap(next);
+        }
+        CertificateManager.invalidateVerifications(crl);
+        return true;
+    }
+
+    /**
+     * Installs the CRL of an issuer from its encoding, see update(X509CRL,X509Certificate)
+     * @param encoded   the DER or PEM encoding of the CRL
+     * @param issuer    the certificate of the CRL issuer, used to verify the CRL signature
+     * @return whether the CRL has been installed, false if it is older than the installed one
+     * @throws CRLException if the CRL cannot be parsed, has not been issued by issuer or its signature is not valid
+     */
+    public boolean update(byte[] encoded,X509Certificate issuer) throws CRLException {
+        X509CRL crl;
+        try {
+            crl = (X509CRL)CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(encoded));
+        } catch(CertificateException e) {
+            throw new CRLException(e);
+        }
+        return update(crl,issuer);
+    }
+
+    /**
+     * Removes the CRL of an issuer
+     * @param issuer the issuer name
+     */
+    public synchronized void remove(X500Principal issuer) {
+        if(!snapshot.containsKey(issuer)) return;
+        Map<X500Principal,IssuerCRL> next = new HashMap<>(snapshot);
+        next.remove(issuer);
+        snapshot = Collections.unmodifiableMap(next);
+    }
+
+    /**
+     * @param certificate   the certificate to be checked
+     * @param issuer        the certificate of its issuer
+     * @return whether the CRL of issuer revokes certificate or is stale; if no CRL of issuer is installed, whether the
+     *         index is strict
+     */
+    @Override
+    public boolean isRevoked(X509Certificate certificate,X509Certificate issuer) {
+        return isRevoked(issuer.getSubjectX500Principal(),certificate.getSerialNumber());
+    }
+
+    /**
+     * @param issuer    the issuer name
+     * @param serial    the serial number of the certificate
+     * @return whether the CRL of issuer revokes the certificate with the given serial number or is stale; if no CRL of
+     *         issuer is installed, whether the index is strict
+     */
+    public boolean isRevoked(X500Principal issuer,BigInteger serial) {
+        lookups.incrementAndGet();
+        IssuerCRL entry = snapshot.get(issuer);
+        if(entry == null) return strict;
+        if(entry.nextUpdate != null && entry.nextUpdate.getTime() < System.currentTimeMillis()) return true;
+        int h = serial.hashCode();
+        if(entry.bloom != null && !entry.mightContain(h)) {
+            filtered.incrementAndGet();
+            return false;
+        }
+        return entry.serials.contains(serial);
+    }
+
+    /**
+     * @param issuer the issuer name
+     * @return the thisUpdate date of the installed CRL of issuer, null if none is installed
+     */
+    public Date getThisUpdate(X500Principal issuer) {
+        IssuerCRL entry = snapshot.get(issuer);
+        return (entry == null)?null:new Date(entry.thisUpdate);
+    }
+
+    /**
+     * @param issuer the issuer name
+     * @return the nextUpdate date of the installed CRL of issuer, null if none is installed or the CRL does not tell it
+     */
+    public Date getNextUpdate(X500Principal issuer) {
+        IssuerCRL entry = snapshot.get(issuer);
+        return (entry == null || entry.nextUpdate == null)?null:(Date)entry.nextUpdate.clone();
+    }
+
+    /**
+     * @return whether the certificates of the issuers without an installed CRL are reported as revoked
+     */
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /**
+     * @return the number of issuers whose CRL is installed
+     */
+    public int getIssuerCount() {
+        return snapshot.size();
+    }
+
+    /**
+     * @return the total number of revoked serial numbers
+     */
+    public int getRevokedCount() {
+        int count = 0;
+        for(IssuerCRL e : snapshot.values()) count+=e.serials.size();
+        return count;
+    }
+
+    /**
+     * @return the number of revocation lookups
+     */
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * @return the number of lookups answered by a Bloom filter without probing the set of serial numbers
+     */
+    public long getFilteredLookupCount() {
+        return filtered.get();
+    }
+
+    private static class IssuerCRL {
+        private final X500Principal issuer;
+        private final long thisUpdate;
+        private final Date nextUpdate;
+        private final Set<BigInteger> serials;
+        private final long[] bloom;
+        private final int bloomMask;
+
+        IssuerCRL(X509CRL crl) {
+            this.issuer = crl.getIssuerX500Principal();
+            this.thisUpdate = crl.getThisUpdate().getTime();
+            this.nextUpdate = crl.getNextUpdate();
+            Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+            if(entries == null) entries = Collections.emptySet();
+            Set<BigInteger> s = new HashSet<>(entries.size()*4/3+1);
+            for(X509CRLEntry e : entries) s.add(e.getSerialNumber());
+            this.serials = s;
+            if(s.size() > BLOOM_FILTER_THRESHOLD) {
+                // a power of two number of bits, so that the bit index is a mask
+                int bits = Integer.highestOneBit(s.size()*BLOOM_BITS_PER_ENTRY-1)<<1;
+                this.bloom = new long[bits>>>6];
+                this.bloomMask = bits-1;
+                for(BigInteger serial : s) add(serial.hashCode());
+            } else {
+                this.bloom = null;
+                this.bloomMask = 0;
+            }
+        }
+
+        private void add(int h) {
+            int h1 = mix(h), h2 = mix(h1)|1;
+            for(int i = 0; i < BLOOM_HASHES; ++i) {
+                int bit = (h1+i*h2)&bloomMask;
+                bloom[bit>>>6]|=1L<<bit;
+            }
+        }
+
+        boolean mightContain(int h) {
+            int h1 = mix(h), h2 = mix(h1)|1;
+            for(int i = 0; i < BLOOM_HASHES; ++i) {
+                int bit = (h1+i*h2)&bloomMask;
+                if((bloom[bit>>>6]&(1L<<bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Finalizer of MurmurHash3, spreading the bits of BigInteger.hashCode
+         */
+        private static int mix(int h) {
+            h^=h>>>16;
+            h*=0x85ebca6b;
+            h^=h>>>13;
+            h*=0xc2b2ae35;
+            h^=h>>>16;
+            return h;
+        }
+    }
+}
@@ -2,10 +2,51 @@
 package cryptoutils.cipherutils;
 
 import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.security.auth.x500.X500Principal;
 
 public class CertificateManager {
+    public static final int DEFAULT_MAX_CACHED_CERTIFICATES = 1024;
+    private static final String FINGERPRINT_ALG = "SHA-256";
+    private static int maxCachedCertificates = DEFAULT_MAX_CACHED_CERTIFICATES;
+    // parsed certificates by SHA-256 of their DER encoding, least recently used first
+    private static final Map<Fingerprint,X509Certificate> CERTIFICATES = new LinkedHashMap<Fingerprint,X509Certificate>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Fingerprint,X509Certificate> eldest) {
+            return size() > maxCachedCertificates;
+        }
+    };
+    private static final AtomicLong CERTIFICATE_HITS = new AtomicLong();
+    private static final AtomicLong CERTIFICATE_MISSES = new AtomicLong();
+    public static final int DEFAULT_MAX_CACHED_VERIFICATIONS = 1024;
+    private static int maxCachedVerifications = DEFAULT_MAX_CACHED_VERIFICATIONS;
+    // successful verifications by certificate and authority, least recently used first
+    private static final Map<VerificationKey,Verification> VERIFICATIONS = new LinkedHashMap<VerificationKey,Verification>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<VerificationKey,Verification> eldest) {
+            return size() > maxCachedVerifications;
+        }
+    };
+    private static final AtomicLong VERIFICATION_HITS = new AtomicLong();
+    private static final AtomicLong VERIFICATION_MISSES = new AtomicLong();
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance(FINGERPRINT_ALG);
+            } catch(NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+    
     /**
      * Returns a Certificate object read from a X.509 formatted certificate file.
      * @param filename  a path to the certificate file
@@ -25,6 +66,96 @@ public class CertificateManager {
             return null;
         }
     }
+    /**
+     * Decodes a X.509 certificate from its DER encoding. Parsed certificates are cached by the SHA-256 of their
+     * encoding, so a certificate received again (e.g. in the handshakes of a returning peer) is not parsed again
+     * and the same X509Certificate object is returned
+     * @param der   the DER encoding of the certificate
+     * @return the certificate
+     * @throws CertificateException if der is not a valid certificate
+     */
+    public static X509Certificate decodeCertificate(byte[] der) throws CertificateException {
+        Fingerprint f = new Fingerprint(DIGEST.get().digest(der));
+        X509Certificate cert;
+        synchronized(CERTIFICATES) {
+            cert = CERTIFICATES.get(f);
+        }
+        if(cert != null) {
+            CERTIFICATE_HITS.incrementAndGet();
+            return cert;
+        }
+        CERTIFICATE_MISSES.incrementAndGet();
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        cert = (X509Certificate)cf.generateCertificate(new ByteArrayInputStream(der));
+        synchronized(CERTIFICATES) {
+            CERTIFICATES.put(f,cert);
+        }
+        return cert;
+    }
+    
+    /**
+     * Sets the maximum number of parsed certificates kept by decodeCertificate, evicting the least recently used ones
+     * @param max the maximum number of certificates, 0 disables the cache
+     */
+    public static void setMaxCachedCertificates(int max) {
+        if(max < 0) throw new IllegalArgumentException("max cannot be negative");
+        synchronized(CERTIFICATES) {
+            maxCachedCertificates = max;
+            while(CERTIFICATES.size() > max) CERTIFICATES.remove(CERTIFICATES.keySet().iterator().next());
+        }
+    }
+    
+    /**
+     * @return the maximum number of parsed certificates kept by decodeCertificate
+     */
+    public static int getMaxCachedCertificates() {
+        synchronized(CERTIFICATES) {
+            return maxCachedCertificates;
+        }
+    }
+    
+    /**
+     * @return the number of parsed certificates currently cached
+     */
+    public static int getCachedCertificateCount() {
+        synchronized(CERTIFICATES) {
+            return CERTIFICATES.size();
+        }
+    }
+    
+    /**
+     * @return the number of decodeCertificate calls served by the cache
+     */
+    public static long getCertificateCacheHitCount() {
+        return CERTIFICATE_HITS.get();
+    }
+    
+    /**
+     * @return the number of decodeCertificate calls that parsed the certificate
+     */
+    public static long getCertificateCacheMissCount() {
+        return CERTIFICATE_MISSES.get();
+    }
+    
+    /**
+     * @return the fraction of decodeCertificate calls served by the cache, 0 if there have been none
+     */
+    public static double getCertificateCacheHitRate() {
+        long hits = CERTIFICATE_HITS.get(), total = hits+CERTIFICATE_MISSES.get();
+        return (total == 0)?0:(double)hits/total;
+    }
+    
+    /**
+     * Empties the cache of parsed certificates and resets its counters
+     */
+    public static void clearCertificateCache() {
+        synchronized(CERTIFICATES) {
+            CERTIFICATES.clear();
+        }
+        CERTIFICATE_HITS.set(0);
+        CERTIFICATE_MISSES.set(0);
+    }
+    
     /**
      * Verifies integrity of Certificate toVerify with a trusted Certificate trustedAuthority
      * @param toVerify          certificate to be validated
@@ -41,20 +172,114 @@ public class CertificateManager {
         }
     }
     /**
-     * Verifies integrity and date-validity of a X509Certificate object with a trusted Certificate trustedAuthority
+     * Verifies integrity and date-validity of a X509Certificate object with a trusted Certificate trustedAuthority.
+     * Successful signature verifications are cached by the pair of certificates, compared by their DER encoding
+     * (Certificate.equals, whose hash is computed once per object), until the notAfter date of toVerify: the
+     * certificate of a returning peer costs a lookup instead of a public key operation. The date-validity is checked
+     * on every call. See invalidateVerifications to drop them when a CRL is updated
      * @param toVerify          certificate to be validated
      * @param trustedAuthority  trusted authority certificate
      * @return boolean indicating whether the Certificate toVerify is valid or not
      */
     public static boolean verifyCertificate(X509Certificate toVerify,Certificate trustedAuthority) {
         try {
-            boolean validity = verifyCertificate((Certificate)toVerify, trustedAuthority);
             toVerify.checkValidity();
-            return validity;
+            VerificationKey k = new VerificationKey(toVerify,trustedAuthority);
+            long now = System.currentTimeMillis();
+            synchronized(VERIFICATIONS) {
+                Verification v = VERIFICATIONS.get(k);
+                if(v != null && v.notAfter >= now) {
+                    VERIFICATION_HITS.incrementAndGet();
+                    return true;
+                }
+                if(v != null) VERIFICATIONS.remove(k);
+            }
+            VERIFICATION_MISSES.incrementAndGet();
+            if(!verifyCertificate((Certificate)toVerify, trustedAuthority)) return false;
+            synchronized(VERIFICATIONS) {
+                VERIFICATIONS.put(k,new Verification(toVerify.getNotAfter().getTime(),toVerify.getIssuerX500Principal()));
+            }
+            return true;
         } catch(Exception e) {
             return false;
         }
     }
+    
+    /**
+     * Verifies a X509Certificate object through a path of intermediate CAs up to a trust anchor of validator,
+     * checking signatures, validity periods, CA constraints and revocation along the path
+     * @param toVerify  certificate to be validated
+     * @param validator the ChainValidator object holding the trust anchors and the intermediate CAs
+     * @return boolean indicating whether the Certificate toVerify is valid or not
+     */
+    public static boolean verifyCertificate(X509Certificate toVerify,ChainValidator validator) {
+        return validator.isValid(toVerify);
+    }
+    
+    /**
+     * Drops every cached certificate verification, e.g. after the trusted authorities changed
+     */
+    public static void invalidateVerifications() {
+        synchronized(VERIFICATIONS) {
+            VERIFICATIONS.clear();
+        }
+    }
+    
+    /**
+     * Drops the cached verifications of the certificates issued by the issuer of an updated CRL,
+     * so that the certificates it revokes are verified again against it
+     * @param crl the updated CRL
+     */
+    public static void invalidateVerifications(X509CRL crl) {
+        X500Principal issuer = crl.getIssuerX500Principal();
+        synchronized(VERIFICATIONS) {
+            VERIFICATIONS.values().removeIf(v -> v.issuer.equals(issuer));
+        }
+    }
+    
+    /**
+     * Sets the maximum number of successful verifications cached by verifyCertificate, evicting the least recently used ones
+     * @param max the maximum number of verifications, 0 disables the cache
+     */
+    public static void setMaxCachedVerifications(int max) {
+        if(max < 0) throw new IllegalArgumentException("max cannot be negative");
+        synchronized(VERIFICATIONS) {
+            maxCachedVerifications = max;
+            while(VERIFICATIONS.size() > max) VERIFICATIONS.remove(VERIFICATIONS.keySet().iterator().next());
+        }
+    }
+    
+    /**
+     * @return the maximum number of successful verifications cached by verifyCertificate
+     */
+    public static int getMaxCachedVerifications() {
+        synchronized(VERIFICATIONS) {
+            return maxCachedVerifications;
+        }
+    }
+    
+    /**
+     * @return the number of successful verifications currently cached
+     */
+    public static int getCachedVerificationCount() {
+        synchronized(VERIFICATIONS) {
+            return VERIFICATIONS.size();
+        }
+    }
+    
+    /**
+     * @return the number of verifyCertificate calls served by the cache
+     */
+    public static long getVerificationCacheHitCount() {
+        return VERIFICATION_HITS.get();
+    }
+    
+    /**
+     * @return the number of verifyCertificate calls that verified the certificate signature
+     */
+    public static long getVerificationCacheMissCount() {
+        return VERIFICATION_MISSES.get();
+    }
     /**
      * 
      * @param cert certificate of which we want the subject
@@ -70,4 +295,55 @@ public class CertificateManager {
         String name = nameStruct[1];
         return name;
     }
+    
+    private static class VerificationKey {
+        private final Certificate certificate;
+        private final Certificate authority;
+        
+        VerificationKey(Certificate certificate,Certificate authority) {
+            this.certificate = certificate;
+            this.authority = authority;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof VerificationKey)) return false;
+            VerificationKey k = (VerificationKey)o;
+            return certificate.equals(k.certificate) && authority.equals(k.authority);
+        }
+        
+        @Override
+        public int hashCode() {
+            return certificate.hashCode()*31+authority.hashCode();
+        }
+    }
+    
+    private static class Verification {
+        private final long notAfter;
+        private final X500Principal issuer;
+        
+        Verification(long notAfter,X500Principal issuer) {
+            this.notAfter = notAfter;
+            this.issuer = issuer;
+        }
+    }
+    
+    private static class Fingerprint {
+        private final byte[] hash;
+        
+        Fingerprint(byte[] hash) {
+            this.hash = hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Fingerprint) && Arrays.equals(hash,((Fingerprint)o).hash);
+        }
+        
+        @Override
+        public int hashCode() {
+            // the bytes of a SHA-256 hash are already uniformly distributed
+            return (hash[0]&0xff)|(hash[1]&0xff)<<8|(hash[2]&0xff)<<16|hash[3]<<24;
+        }
+    }
 }
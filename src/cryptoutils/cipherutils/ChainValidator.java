@@ -0,0 +1,352 @@
+package cryptoutils.cipherutils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Builds and validates certificate paths from leaf certificates to a set of trust anchors, through the intermediate
+ * CA certificates it has been given. Trust anchors and intermediates are indexed by subject and by subject key
+ * identifier, so the issuer candidates of a certificate are found by its authority key identifier (or its issuer
+ * name) without scanning the store. Every link of a path is checked for signature (see CertificateManager.verifyCertificate,
+ * whose verifications are cached), validity period, CA basic constraints and key usage, and revocation by means of an
+ * optional RevocationChecker. Certificates below the trust anchor carrying a critical extension other than basic
+ * constraints, key usage and the key identifiers are rejected, as RFC 5280 requires. Validated paths are cached per leaf until the first notAfter date along the path; the
+ * revocation of a cached path is checked again on every lookup.
+ * Instances are thread-safe, many leaves can be validated concurrently by means of validateAll.
+ */
+public class ChainValidator {
+    public static final int MAX_PATH_LENGTH = 8;
+    public static final int DEFAULT_MAX_CACHED_PATHS = 1024;
+    private static final int SLICE_SIZE = 64;
+    private static final String SKI_OID = "2.5.29.14";
+    private static final String AKI_OID = "2.5.29.35";
+    private static final String BASIC_CONSTRAINTS_OID = "2.5.29.19";
+    private static final String KEY_USAGE_OID = "2.5.29.15";
+    private static final Set<String> HANDLED_CRITICAL_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(BASIC_CONSTRAINTS_OID,KEY_USAGE_OID,SKI_OID,AKI_OID)));
+    private static final int KEY_CERT_SIGN = 5;
+    private final Set<X509Certificate> anchors = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<X500Principal,List<X509Certificate>> bySubject = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ByteBuffer,List<X509Certificate>> byKeyId = new ConcurrentHashMap<>();
+    private volatile RevocationChecker revocationChecker;
+    private final int maxCachedPaths;
+    private final Map<X509Certificate,CachedPath> paths;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param trustAnchors      the trusted root certificates
+     * @param revocationChecker the source of revocation information, null to skip revocation checking
+     * @param maxCachedPaths    the maximum number of validated paths kept, 0 disables the cache
+     */
+    public ChainValidator(Collection<? extends X509Certificate> trustAnchors,RevocationChecker revocationChecker,int maxCachedPaths) {
+        if(maxCachedPaths < 0) throw new IllegalArgumentException("maxCachedPaths cannot be negative");
+        this.revocationChecker = revocationChecker;
+        this.maxCachedPaths = maxCachedPaths;
+        this.paths = new LinkedHashMap<X509Certificate,CachedPath>(16,0.75f,true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<X509Certificate,CachedPath> eldest) {
+                return size() > ChainValidator.this.maxCachedPaths;
+            }
+        };
+        for(X509Certificate c : trustAnchors) addTrustAnchor(c);
+    }
+
+    /**
+     * Validator without revocation checking, caching DEFAULT_MAX_CACHED_PATHS paths
+     * @param trustAnchors the trusted root certificates
+     */
+    public ChainValidator(Collection<? extends X509Certificate> trustAnchors) {
+        this(trustAnchors,null,DEFAULT_MAX_CACHED_PATHS);
+    }
+
+    /**
+     * Adds a trusted root certificate
+     * @param anchor the certificate
+     */
+    public void addTrustAnchor(X509Certificate anchor) {
+        if(anchors.add(anchor)) index(anchor);
+    }
+
+    /**
+     * Adds an intermediate CA certificate, which is trusted only if it is part of a valid path to a trust anchor
+     * @param intermediate the certificate
+     */
+    public void addIntermediate(X509Certificate intermediate) {
+        if(!anchors.contains(intermediate)) index(intermediate);
+    }
+
+    /**
+     * Adds intermediate CA certificates, see addIntermediate
+     * @param intermediates the certificates
+     */
+    public void addIntermediates(Collection<? extends X509Certificate> intermediates) {
+        for(X509Certificate c : intermediates) addIntermediate(c);
+    }
+
+    /**
+     * Sets the source of revocation information, dropping the cached paths
+     * @param revocationChecker the RevocationChecker object, null to skip revocation checking
+     */
+    public void setRevocationChecker(RevocationChecker revocationChecker) {
+        this.revocationChecker = revocationChecker;
+        clearCache();
+    }
+
+    /**
+     * @return the source of revocation information, null if revocation is not checked
+     */
+    public RevocationChecker getRevocationChecker() {
+        return revocationChecker;
+    }
+
+    /**
+     * Builds and validates a path from leaf to a trust anchor
+     * @param leaf the certificate to be validated
+     * @return the validated path, from leaf to the trust anchor
+     * @throws CertificateException if no valid path can be built, the message tells the reason
+     */
+    public List<X509Certificate> validate(X509Certificate leaf) throws CertificateException {
+        CachedPath cached;
+        synchronized(paths) {
+            cached = paths.get(leaf);
+        }
+        if(cached != null && cached.notAfter >= System.currentTimeMillis() && !isRevoked(cached.path)) {
+            hits.incrementAndGet();
+            return cached.path;
+        }
+        misses.incrementAndGet();
+        Deque<X509Certificate> path = new ArrayDeque<>();
+        path.add(leaf);
+        String[] failure = {"no issuer found for "+leaf.getSubjectX500Principal()};
+        if(anchors.contains(leaf)) leaf.checkValidity();
+        else if(!build(path,0,failure)) throw new CertificateException(failure[0]);
+        List<X509Certificate> result = Collections.unmodifiableList(new ArrayList<>(path));
+        long notAfter = Long.MAX_VALUE;
+        for(X509Certificate c : result) notAfter = Math.min(notAfter,c.getNotAfter().getTime());
+        synchronized(paths) {
+            paths.put(leaf,new CachedPath(result,notAfter));
+        }
+        return result;
+    }
+
+    /**
+     * @param leaf the certificate to be validated
+     * @return whether a valid path from leaf to a trust anchor exists
+     */
+    public boolean isValid(X509Certificate leaf) {
+        try {
+            validate(leaf);
+            return true;
+        } catch(CertificateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Validates many leaf certificates on the common ForkJoinPool
+     * @param leaves the certificates to be validated
+     * @return the bitmap of the valid certificates, bit i refers to the i-th certificate
+     * @throws InterruptedException
+     */
+    public BitSet validateAll(List<X509Certificate> leaves) throws InterruptedException {
+        return validateAll(leaves,ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates many leaf certificates fanning them out, in slices, across the executor
+     * @param leaves    the certificates to be validated
+     * @param executor  the executor running the validations
+     * @return the bitmap of the valid certificates, bit i refers to the i-th certificate
+     * @throws InterruptedException
+     */
+    public BitSet validateAll(final List<X509Certificate> leaves,ExecutorService executor) throws InterruptedException {
+        List<Callable<BitSet>> tasks = new ArrayList<>();
+        for(int from = 0; from < leaves.size(); from+=SLICE_SIZE) {
+            final int start = from, end = Math.min(leaves.size(),from+SLICE_SIZE);
+            tasks.add(() -> {
+                BitSet result = new BitSet();
+                for(int i = start; i < end; ++i) {
+                    try {
+                        if(isValid(leaves.get(i))) result.set(i);
+                    } catch(RuntimeException e) {
+                        // only this leaf is invalid, e.g. its RevocationChecker or the provider failed
+                    }
+                }
+                return result;
+            });
+        }
+        BitSet result = new BitSet(leaves.size());
+        for(Future<BitSet> f : executor.invokeAll(tasks)) {
+            try {
+                result.or(f.get());
+            } catch(ExecutionException e) {
+                // the failures are caught per leaf, a slice fails as a whole only on an Error
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the cached paths, e.g. after revocation information has been updated
+     */
+    public void clearCache() {
+        synchronized(paths) {
+            paths.clear();
+        }
+    }
+
+    /**
+     * @return the number of validated paths currently cached
+     */
+    public int getCachedPathCount() {
+        synchronized(paths) {
+            return paths.size();
+        }
+    }
+
+    /**
+     * @return the number of validations served by a cached path
+     */
+    public long getPathCacheHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of validations that built a path
+     */
+    public long getPathCacheMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Extends path, whose last certificate is not a trust anchor, up to a trust anchor (depth-first)
+     * @param path          the path built so far, extended in place
+     * @param caBelow       the number of intermediate CA certificates in path, for the pathLenConstraint checks
+     * @param failure       the reason of the last failure, for the exception message
+     * @return whether a trust anchor has been reached
+     */
+    private boolean build(Deque<X509Certificate> path,int caBelow,String[] failure) {
+        X509Certificate child = path.peekLast();
+        if(path.size() >= MAX_PATH_LENGTH) {
+            failure[0] = "path longer than "+MAX_PATH_LENGTH+" certificates";
+            return false;
+        }
+        String extension = getUnhandledCriticalExtension(child);
+        if(extension != null) {
+            failure[0] = child.getSubjectX500Principal()+" has the unsupported critical extension "+extension;
+            return false;
+        }
+        for(X509Certificate issuer : findIssuers(child)) {
+            if(path.contains(issuer)) continue;
+            if(!CertificateManager.verifyCertificate(child,issuer)) {
+                failure[0] = "invalid signature or validity period of "+child.getSubjectX500Principal();
+                continue;
+            }
+            if(!anchors.contains(issuer) && !isCA(issuer,caBelow)) {
+                failure[0] = issuer.getSubjectX500Principal()+" is not allowed to issue certificates";
+                continue;
+            }
+            RevocationChecker checker = revocationChecker;
+            if(checker != null && checker.isRevoked(child,issuer)) {
+                failure[0] = child.getSubjectX500Principal()+" has been revoked";
+                continue;
+            }
+            path.addLast(issuer);
+            if(anchors.contains(issuer)) return true;
+            if(build(path,caBelow+(isSelfIssued(issuer)?0:1),failure)) return true;
+            path.removeLast();
+        }
+        return false;
+    }
+
+    private List<X509Certificate> findIssuers(X509Certificate c) {
+        X500Principal issuerName = c.getIssuerX500Principal();
+        List<X509Certificate> candidates = null;
+        byte[] aki = getAuthorityKeyId(c);
+        if(aki != null) candidates = byKeyId.get(ByteBuffer.wrap(aki));
+        // issuers without a subject key identifier are found by name
+        if(candidates == null) candidates = bySubject.get(issuerName);
+        if(candidates == null) return Collections.emptyList();
+        List<X509Certificate> issuers = new ArrayList<>(candidates.size());
+        for(X509Certificate i : candidates)
+            if(i.getSubjectX500Principal().equals(issuerName)) issuers.add(i);
+        return issuers;
+    }
+
+    private boolean isRevoked(List<X509Certificate> path) {
+        RevocationChecker checker = revocationChecker;
+        if(checker == null) return false;
+        for(int i = 0; i+1 < path.size(); ++i)
+            if(checker.isRevoked(path.get(i),path.get(i+1))) return true;
+        return false;
+    }
+
+    private void index(X509Certificate c) {
+        bySubject.computeIfAbsent(c.getSubjectX500Principal(),k -> new CopyOnWriteArrayList<>()).add(c);
+        byte[] ski = getSubjectKeyId(c);
+        if(ski != null) byKeyId.computeIfAbsent(ByteBuffer.wrap(ski),k -> new CopyOnWriteArrayList<>()).add(c);
+    }
+
+    private static boolean isCA(X509Certificate c,int caBelow) {
+        // getBasicConstraints is -1 for non CA certificates and the pathLenConstraint (MAX_VALUE if unlimited) for CAs
+        if(c.getBasicConstraints() < caBelow) return false;
+        boolean[] keyUsage = c.getKeyUsage();
+        return keyUsage == null || (keyUsage.length > KEY_CERT_SIGN && keyUsage[KEY_CERT_SIGN]);
+    }
+
+    private static String getUnhandledCriticalExtension(X509Certificate c) {
+        Set<String> critical = c.getCriticalExtensionOIDs();
+        if(critical != null)
+            for(String oid : critical)
+                if(!HANDLED_CRITICAL_EXTENSIONS.contains(oid)) return oid;
+        return null;
+    }
+
+    private static boolean isSelfIssued(X509Certificate c) {
+        return c.getSubjectX500Principal().equals(c.getIssuerX500Principal());
+    }
+
+    /**
+     * SubjectKeyIdentifier ::= OCTET STRING, wrapped into the OCTET STRING of the extension value
+     */
+    private static byte[] getSubjectKeyId(X509Certificate c) {
+        byte[] ext = c.getExtensionValue(SKI_OID);
+        if(ext == null) return null;
+        try {
+            return new DER.Reader(ext).enter(DER.OCTET_STRING).readContent(DER.OCTET_STRING);
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * AuthorityKeyIdentifier ::= SEQUENCE { keyIdentifier [0] IMPLICIT OCTET STRING OPTIONAL, ... },
+     * wrapped into the OCTET STRING of the extension value
+     */
+    private static byte[] getAuthorityKeyId(X509Certificate c) {
+        byte[] ext = c.getExtensionValue(AKI_OID);
+        if(ext == null) return null;
+        try {
+            DER.Reader r = new DER.Reader(ext).enter(DER.OCTET_STRING).enter(DER.SEQUENCE);
+            return (r.peekTag() == DER.CONTEXT_PRIMITIVE_0)?r.readContent(DER.CONTEXT_PRIMITIVE_0):null;
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    private static class CachedPath {
+        private final List<X509Certificate> path;
+        private final long notAfter;
+
+        CachedPath(List<X509Certificate> path,long notAfter) {
+            this.path = path;
+            this.notAfter = notAfter;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package cryptoutils.cipherutils;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Bounded pool of Cipher objects grouped by transformation.
+ * A Cipher is looked up through the provider list only when the pool of its transformation is empty,
+ * so in steady state acquiring a Cipher performs no provider lookup at all.
+ * Ciphers are re-initialized by the caller before every use, so a Cipher never encrypts or decrypts with the key of a
+ * previous user; an idle pooled Cipher does keep the key schedule and parameters of its last initialization, though.
+ * Ciphers whose provider refuses to be re-initialized with the key and nonce of their previous initialization
+ * (e.g. ChaCha20-Poly1305) must not be pooled on the decryption side.
+ */
+public class CipherPool {
+    private static final int DEFAULT_MAX_POOLED = 32;
+    private static final ConcurrentHashMap<String,BlockingQueue<Cipher>> POOLS = new ConcurrentHashMap<>();
+    private static final AtomicLong CREATED = new AtomicLong();
+    private static final AtomicLong REUSED = new AtomicLong();
+    private static final AtomicLong DISCARDED = new AtomicLong();
+    private static volatile int maxPooled = DEFAULT_MAX_POOLED;
+
+    /**
+     * Takes a Cipher implementing the given transformation from the pool, creating a new one if the pool is empty
+     * @param transformation    the transformation, e.g. "AES/CBC/PKCS5Padding"
+     * @return  a Cipher object that must be initialized before use and given back by means of release
+     * @throws NoSuchAlgorithmException
+     * @throws NoSuchPaddingException
+     */
+    public static Cipher acquire(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Cipher cipher = pool(transformation).poll();
+        if(cipher != null) {
+            REUSED.incrementAndGet();
+            return cipher;
+        }
+        CREATED.incrementAndGet();
+        return Cipher.getInstance(transformation);
+    }
+
+    /**
+     * Gives back a Cipher obtained by means of acquire. If the pool is full the Cipher is discarded
+     * @param cipher the Cipher object, may be null
+     */
+    public static void release(Cipher cipher) {
+        if(cipher == null) return;
+        if(!pool(cipher.getAlgorithm()).offer(cipher)) DISCARDED.incrementAndGet();
+    }
+
+    /**
+     * Sets the maximum number of idle Cipher objects kept for each transformation.
+     * The existing pools are cleared: the idle Cipher objects are dropped and new pools are created with the new bound
+     * @param max the new bound, at least 1
+     */
+    public static void setMaxPooled(int max) {
+        if(max < 1) throw new IllegalArgumentException("max must be positive");
+        maxPooled = max;
+        POOLS.clear();
+    }
+
+    /**
+     * @return the maximum number of idle Cipher objects kept for each transformation
+     */
+    public static int getMaxPooled() {
+        return maxPooled;
+    }
+
+    /**
+     * @return the number of Cipher objects created by means of a provider lookup
+     */
+    public static long getCreatedCount() {
+        return CREATED.get();
+    }
+
+    /**
+     * @return the number of acquisitions served by an already existing Cipher
+     */
+    public static long getReusedCount() {
+        return REUSED.get();
+    }
+
+    /**
+     * @return the number of Cipher objects dropped because their pool was full
+     */
+    public static long getDiscardedCount() {
+        return DISCARDED.get();
+    }
+
+    /**
+     * @return the number of idle Cipher objects currently pooled, over all the transformations
+     */
+    public static int getIdleCount() {
+        int idle = 0;
+        for(BlockingQueue<Cipher> q : POOLS.values()) idle+=q.size();
+        return idle;
+    }
+
+    private static BlockingQueue<Cipher> pool(String transformation) {
+        BlockingQueue<Cipher> q = POOLS.get(transformation);
+        if(q == null) {
+            BlockingQueue<Cipher> created = new ArrayBlockingQueue<>(maxPooled);
+            q = POOLS.putIfAbsent(transformation, created);
+            if(q == null) q = created;
+        }
+        return q;
+    }
+}
@@ -0,0 +1,257 @@
+package cryptoutils.cipherutils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+
+/**
+ * Minimal DER (ASN.1 distinguished encoding rules) support: a reader walking TLV elements in place, without copying,
+ * and the encoding of the few structures the library builds (e.g. the PKCS8 wrapping of PKCS#1 and SEC1 keys).
+ * Only definite lengths up to 2^24-1 bytes are supported, which covers keys and certificates.
+ */
+final class DER {
+    static final int INTEGER = 0x02;
+    static final int BIT_STRING = 0x03;
+    static final int OCTET_STRING = 0x04;
+    static final int NULL = 0x05;
+    static final int OID = 0x06;
+    static final int SEQUENCE = 0x30;
+    static final int CONTEXT_0 = 0xa0;
+    static final int CONTEXT_PRIMITIVE_0 = 0x80;
+    // content bytes of the OIDs of the key algorithms and the matching KeyFactory algorithms
+    static final byte[] OID_RSA = {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x01,0x01,0x01};
+    static final byte[] OID_EC = {0x2a,(byte)0x86,0x48,(byte)0xce,0x3d,0x02,0x01};
+    private static final byte[][] KEY_OIDS = {
+        OID_RSA,
+        {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x01,0x01,0x0a},
+        OID_EC,
+        {0x2a,(byte)0x86,0x48,(byte)0xce,0x38,0x04,0x01},
+        {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x01,0x03,0x01},
+        {0x2b,0x65,0x6e},
+        {0x2b,0x65,0x6f},
+        {0x2b,0x65,0x70},
+        {0x2b,0x65,0x71}
+    };
+    private static final String[] KEY_ALGORITHMS = {"RSA","RSASSA-PSS","EC","DSA","DiffieHellman","X25519","X448","Ed25519","Ed448"};
+    // content bytes of the OIDs of PBKDF2, of its PRFs and of the PBES2 encryption schemes, and the matching parts of the
+    // PBEWith<prf>And<scheme> algorithm names
+    private static final byte[] OID_PBKDF2 = {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x01,0x05,0x0c};
+    private static final byte[][] PRF_OIDS = {
+        {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x02,0x07},
+        {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x02,0x08},
+        {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x02,0x09},
+        {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x02,0x0a},
+        {0x2a,(byte)0x86,0x48,(byte)0x86,(byte)0xf7,0x0d,0x02,0x0b}
+    };
+    private static final String[] PRF_NAMES = {"HmacSHA1","HmacSHA224","HmacSHA256","HmacSHA384","HmacSHA512"};
+    private static final byte[][] SCHEME_OIDS = {
+        {0x60,(byte)0x86,0x48,0x01,0x65,0x03,0x04,0x01,0x02},
+        {0x60,(byte)0x86,0x48,0x01,0x65,0x03,0x04,0x01,0x16},
+        {0x60,(byte)0x86,0x48,0x01,0x65,0x03,0x04,0x01,0x2a}
+    };
+    private static final String[] SCHEME_NAMES = {"AES_128","AES_192","AES_256"};
+
+    private DER() {
+    }
+
+    /**
+     * Reads the key algorithm from the DER encoding of a PKCS8 PrivateKeyInfo:
+     * SEQUENCE { INTEGER version, SEQUENCE { OBJECT IDENTIFIER algorithm, ... }, ... }
+     * or of an X.509 SubjectPublicKeyInfo: SEQUENCE { SEQUENCE { OBJECT IDENTIFIER algorithm, ... }, ... }
+     * @param der           the encoded key
+     * @param privateKey    whether der is a PrivateKeyInfo or a SubjectPublicKeyInfo
+     * @return the KeyFactory algorithm
+     * @throws InvalidKeySpecException if the encoding is malformed or the algorithm unknown
+     */
+    static String getKeyAlgorithm(byte[] der,boolean privateKey) throws InvalidKeySpecException {
+        try {
+            Reader r = new Reader(der).enter(SEQUENCE);
+            if(privateKey) r.skip(INTEGER);
+            Reader alg = r.enter(SEQUENCE);
+            int length = alg.readHeader(OID);
+            for(int i = 0; i < KEY_OIDS.length; ++i)
+                if(KEY_OIDS[i].length == length && alg.regionEquals(KEY_OIDS[i])) return KEY_ALGORITHMS[i];
+        } catch(IOException e) {
+            throw new InvalidKeySpecException("malformed key encoding");
+        }
+        throw new InvalidKeySpecException("unsupported key algorithm");
+    }
+
+    /**
+     * Reads the PBE algorithm from the DER encoding of a PKCS8 EncryptedPrivateKeyInfo protected by PBES2 (RFC 8018):
+     * SEQUENCE { SEQUENCE { OBJECT IDENTIFIER pbes2, SEQUENCE { SEQUENCE { OBJECT IDENTIFIER pbkdf2, SEQUENCE {
+     * OCTET STRING salt, INTEGER iterations, INTEGER keyLength OPTIONAL, SEQUENCE prf DEFAULT hmacWithSHA1 } },
+     * SEQUENCE { OBJECT IDENTIFIER encryptionScheme, ... } } }, OCTET STRING encryptedData }
+     * @param der the encoded EncryptedPrivateKeyInfo
+     * @return the SecretKeyFactory and Cipher algorithm, e.g. PBEWithHmacSHA256AndAES_256
+     * @throws InvalidKeySpecException if the encoding is malformed, or the key derivation function or the encryption
+     * scheme is unsupported
+     */
+    static String getPBES2Algorithm(byte[] der) throws InvalidKeySpecException {
+        try {
+            Reader alg = new Reader(der).enter(SEQUENCE).enter(SEQUENCE);
+            alg.skip(OID);
+            Reader params = alg.enter(SEQUENCE);
+            Reader kdf = params.enter(SEQUENCE);
+            if(!Arrays.equals(kdf.readContent(OID),OID_PBKDF2)) throw new InvalidKeySpecException("unsupported key derivation function");
+            Reader pbkdf2 = kdf.enter(SEQUENCE);
+            pbkdf2.skip(OCTET_STRING);
+            pbkdf2.skip(INTEGER);
+            if(pbkdf2.peekTag() == INTEGER) pbkdf2.skip(INTEGER);
+            String prf = PRF_NAMES[0];
+            if(pbkdf2.peekTag() == SEQUENCE) prf = lookup(pbkdf2.enter(SEQUENCE).readContent(OID),PRF_OIDS,PRF_NAMES,"unsupported PBKDF2 pseudorandom function");
+            String scheme = lookup(params.enter(SEQUENCE).readContent(OID),SCHEME_OIDS,SCHEME_NAMES,"unsupported PBES2 encryption scheme");
+            return "PBEWith"+prf+"And"+scheme;
+        } catch(IOException e) {
+            throw new InvalidKeySpecException("malformed key encoding");
+        }
+    }
+
+    private static String lookup(byte[] oid,byte[][] oids,String[] names,String error) throws InvalidKeySpecException {
+        for(int i = 0; i < oids.length; ++i)
+            if(Arrays.equals(oids[i],oid)) return names[i];
+        throw new InvalidKeySpecException(error);
+    }
+
+    /**
+     * Encodes a TLV element
+     * @param tag       the tag
+     * @param contents  the content, the concatenation of the given arrays
+     * @return the encoded element
+     */
+    static byte[] encode(int tag,byte[]... contents) {
+        int length = 0;
+        for(byte[] c : contents) length+=c.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length+5);
+        out.write(tag);
+        if(length < 0x80) {
+            out.write(length);
+        } else {
+            int n = (length > 0xffff)?3:(length > 0xff)?2:1;
+            out.write(0x80|n);
+            for(int i = n-1; i >= 0; --i) out.write(length>>>(8*i));
+        }
+        for(byte[] c : contents) out.write(c,0,c.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reader of the TLV elements of a region of a DER encoding
+     */
+    static final class Reader {
+        private final byte[] der;
+        private int pos;
+        private final int end;
+
+        Reader(byte[] der) {
+            this(der,0,der.length);
+        }
+
+        Reader(byte[] der,int offset,int end) {
+            this.der = der;
+            this.pos = offset;
+            this.end = end;
+        }
+
+        /**
+         * @return whether other elements follow
+         */
+        boolean hasMore() {
+            return pos < end;
+        }
+
+        /**
+         * @return the tag of the next element, -1 if there are no more elements
+         */
+        int peekTag() {
+            return (pos < end)?(der[pos]&0xff):-1;
+        }
+
+        /**
+         * @return the offset of the next element in the encoding
+         */
+        int position() {
+            return pos;
+        }
+
+        /**
+         * Reads the tag and the length of the next element, which must have the given tag, leaving the reader on its content
+         * @param tag the expected tag
+         * @return the content length
+         * @throws IOException
+         */
+        int readHeader(int tag) throws IOException {
+            if(pos+2 > end || (der[pos]&0xff) != tag) throw new IOException("malformed DER encoding");
+            pos++;
+            int length = der[pos++]&0xff;
+            if(length >= 0x80) {
+                int n = length-0x80;
+                if(n < 1 || n > 3 || pos+n > end) throw new IOException("malformed DER encoding");
+                length = 0;
+                while(n-- > 0) length = (length<<8)|(der[pos++]&0xff);
+            }
+            if(length > end-pos) throw new IOException("malformed DER encoding");
+            return length;
+        }
+
+        /**
+         * Enters the next element, which must have the given tag
+         * @param tag the expected tag
+         * @return a reader over the content of the element, this reader moves past the element
+         * @throws IOException
+         */
+        Reader enter(int tag) throws IOException {
+            int length = readHeader(tag);
+            Reader r = new Reader(der,pos,pos+length);
+            pos+=length;
+            return r;
+        }
+
+        /**
+         * Returns a copy of the content of the next element, which must have the given tag
+         * @param tag the expected tag
+         * @return the content bytes
+         * @throws IOException
+         */
+        byte[] readContent(int tag) throws IOException {
+            int length = readHeader(tag);
+            byte[] content = new byte[length];
+            System.arraycopy(der,pos,content,0,length);
+            pos+=length;
+            return content;
+        }
+
+        /**
+         * Returns a copy of the whole next element (tag, length and content), which must have the given tag
+         * @param tag the expected tag
+         * @return the encoded element
+         * @throws IOException
+         */
+        byte[] readElement(int tag) throws IOException {
+            int start = pos;
+            int length = readHeader(tag);
+            pos+=length;
+            byte[] element = new byte[pos-start];
+            System.arraycopy(der,start,element,0,element.length);
+            return element;
+        }
+
+        /**
+         * Skips the next element, which must have the given tag
+         * @param tag the expected tag
+         * @throws IOException
+         */
+        void skip(int tag) throws IOException {
+            int length = readHeader(tag);
+            pos+=length;
+        }
+
+        private boolean regionEquals(byte[] a) {
+            if(pos+a.length > end) return false;
+            for(int i = 0; i < a.length; ++i)
+                if(a[i] != der[pos+i]) return false;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cryptoutils.cipherutils;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Generator of unpredictable initialization vectors and nonces.
+ * Every thread owns its generator state, so no lock and no digest is involved in producing an IV.
+ * Two strategies are available:
+ * SECURE_RANDOM draws every IV from a per-thread SecureRandom;
+ * ENCRYPTED_COUNTER encrypts a per-thread 128 bit counter with a per-thread random AES key (both seeded
+ * from SecureRandom), which costs a single AES block operation per IV.
+ */
+public class IVGenerator {
+    public enum Strategy { SECURE_RANDOM, ENCRYPTED_COUNTER }
+    public static final int IV_SIZE = 16;
+    private static volatile Strategy strategy = Strategy.SECURE_RANDOM;
+    private static final ThreadLocal<State> STATE = new ThreadLocal<>();
+
+    /**
+     * Sets the strategy used from now on by every thread
+     * @param s the strategy
+     */
+    public static void setStrategy(Strategy s) {
+        if(s == null) throw new IllegalArgumentException("strategy cannot be null");
+        strategy = s;
+    }
+
+    /**
+     * @return the strategy in use
+     */
+    public static Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return a new 16 bytes IV
+     */
+    public static byte[] nextIV() {
+        byte[] iv = new byte[IV_SIZE];
+        nextIV(iv,0,IV_SIZE);
+        return iv;
+    }
+
+    /**
+     * Writes a new IV of length bytes into out starting from offset
+     * @param out       the output buffer
+     * @param offset    the offset in the output buffer
+     * @param length    the IV length, at most 16 bytes
+     */
+    public static void nextIV(byte[] out,int offset,int length) {
+        if(length > IV_SIZE) throw new IllegalArgumentException("IV too long");
+        State s = STATE.get();
+        Strategy current = strategy;
+        if(s == null || s.strategy != current) {
+            s = new State(current);
+            STATE.set(s);
+        }
+        s.next(out,offset,length);
+    }
+
+    private static class State {
+        private final Strategy strategy;
+        private final SecureRandom rng = new SecureRandom();
+        private Cipher aes;
+        private byte[] counter;
+        private byte[] block;
+
+        State(Strategy strategy) {
+            this.strategy = strategy;
+            if(strategy == Strategy.ENCRYPTED_COUNTER) {
+                byte[] key = new byte[16];
+                counter = new byte[IV_SIZE];
+                block = new byte[IV_SIZE];
+                rng.nextBytes(key);
+                rng.nextBytes(counter);
+                try {
+                    aes = Cipher.getInstance("AES/ECB/NoPadding");
+                    aes.init(Cipher.ENCRYPT_MODE,new SecretKeySpec(key,"AES"));
+                } catch(GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        void next(byte[] out,int offset,int length) {
+            if(strategy == Strategy.SECURE_RANDOM) {
+                if(offset == 0 && length == out.length) {
+                    rng.nextBytes(out);
+                } else {
+                    byte[] tmp = new byte[length];
+                    rng.nextBytes(tmp);
+                    System.arraycopy(tmp,0,out,offset,length);
+                }
+                return;
+            }
+            for(int i = IV_SIZE-1; i >= 0 && ++counter[i] == 0; --i);
+            try {
+                aes.doFinal(counter,0,IV_SIZE,block,0);
+            } catch(GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            System.arraycopy(block,0,out,offset,length);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package cryptoutils.cipherutils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the private keys read from PEM files, keyed by path: a file is read and parsed once, then every lookup
+ * returns the same PrivateKey object. When watching is enabled, the directories of the cached files are watched by
+ * means of a WatchService and a key file that is rewritten or replaced (key rotation) is reloaded in background;
+ * if the new file cannot be parsed (e.g. it is still being written) the previous key is kept.
+ * Keys are read by means of CryptoManager.readPrivateKeyFromPEMFile, so every PKCS8 key type is supported.
+ */
+public class PEMKeyStore implements Closeable {
+    private static volatile PEMKeyStore defaultStore = null;
+    private final ConcurrentHashMap<Path,Entry> keys = new ConcurrentHashMap<>();
+    private final boolean watch;
+    private final Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+    private WatchService watcher = null;
+    private boolean closed = false;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong loadTimeNanos = new AtomicLong();
+
+    /**
+     * @param watch whether the key files are watched and reloaded when they change
+     */
+    public PEMKeyStore(boolean watch) {
+        this.watch = watch;
+    }
+
+    /**
+     * Key store watching the key files
+     */
+    public PEMKeyStore() {
+        this(true);
+    }
+
+    /**
+     * @return the key store shared by the whole application, created on first use
+     */
+    public static PEMKeyStore getDefault() {
+        PEMKeyStore s = defaultStore;
+        if(s == null) {
+            synchronized(PEMKeyStore.class) {
+                s = defaultStore;
+                if(s == null) defaultStore = s = new PEMKeyStore();
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns the PrivateKey read from a PEM file, reading and parsing the file only the first time
+     * @param file  the key file path
+     * @return  the PrivateKey object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException
+     * @throws IOException
+     */
+    public PrivateKey getPrivateKey(Path file) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+        Path p = file.toAbsolutePath().normalize();
+        Entry e = keys.get(p);
+        if(e == null) {
+            Entry created = new Entry(p);
+            e = keys.putIfAbsent(p,created);
+            if(e == null) e = created;
+        }
+        return e.get();
+    }
+
+    /**
+     * Returns the PrivateKey read from a PEM file, reading and parsing the file only the first time
+     * @param filename  the key file path
+     * @return  the PrivateKey object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException
+     * @throws IOException
+     */
+    public PrivateKey getPrivateKey(String filename) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+        return getPrivateKey(Paths.get(filename));
+    }
+
+    /**
+     * Forgets the key read from a file, the next lookup reads the file again
+     * @param file the key file path
+     */
+    public void invalidate(Path file) {
+        keys.remove(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * @return the number of cached keys
+     */
+    public int getCachedKeyCount() {
+        return keys.size();
+    }
+
+    /**
+     * @return the number of lookups served by a cached key
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that read the key file
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of key files read and parsed successfully, reloads included
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * @return the number of keys reloaded because their file changed
+     */
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    /**
+     * @return the number of key files that could not be read or parsed
+     */
+    public long getLoadFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * @return the total time spent reading and parsing key files, in nanoseconds
+     */
+    public long getTotalLoadTimeNanos() {
+        return loadTimeNanos.get();
+    }
+
+    /**
+     * Stops watching the key files for good: the cached keys are still returned and new key files are still loaded,
+     * but no watcher thread is started again
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        WatchService w;
+        synchronized(this) {
+            closed = true;
+            w = watcher;
+            watcher = null;
+            watchedDirs.clear();
+        }
+        if(w != null) w.close();
+    }
+
+    private PrivateKey load(Path file) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+        long start = System.nanoTime();
+        try {
+            PrivateKey key = CryptoManager.readPrivateKeyFromPEMFile(file.toString());
+            loads.incrementAndGet();
+            return key;
+        } catch(NoSuchAlgorithmException | InvalidKeySpecException | IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            loadTimeNanos.addAndGet(System.nanoTime()-start);
+        }
+    }
+
+    private synchronized void watch(Path dir) throws IOException {
+        if(!watch || closed || dir == null || watchedDirs.contains(dir)) return;
+        if(watcher == null) {
+            watcher = dir.getFileSystem().newWatchService();
+            final WatchService w = watcher;
+            Thread t = new Thread(() -> processEvents(w),"pem-key-watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+        dir.register(watcher,StandardWatchEventKinds.ENTRY_CREATE,StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirs.add(dir);
+    }
+
+    private void processEvents(WatchService w) {
+        try {
+            while(true) {
+                WatchKey wk = w.take();
+                Path dir = (Path)wk.watchable();
+                for(WatchEvent<?> event : wk.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        for(Entry e : keys.values())
+                            if(dir.equals(e.file.getParent())) e.reload();
+                    } else {
+                        Entry e = keys.get(dir.resolve((Path)event.context()));
+                        if(e != null) e.reload();
+                    }
+                }
+                wk.reset();
+            }
+        } catch(InterruptedException | ClosedWatchServiceException e) {
+            // the store has been closed
+        }
+    }
+
+    private class Entry {
+        private final Path file;
+        private volatile PrivateKey key = null;
+
+        Entry(Path file) {
+            this.file = file;
+        }
+
+        PrivateKey get() throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+            PrivateKey k = key;
+            if(k != null) {
+                hits.incrementAndGet();
+                return k;
+            }
+            synchronized(this) {
+                if(key == null) {
+                    misses.incrementAndGet();
+                    try {
+                        key = load(file);
+                    } catch(NoSuchAlgorithmException | InvalidKeySpecException | IOException e) {
+                        keys.remove(file,this);
+                        throw e;
+                    }
+                    try {
+                        watch(file.getParent());
+                    } catch(IOException e) {
+                        // the key is served anyway, without hot reload
+                    }
+                } else {
+                    hits.incrementAndGet();
+                }
+                return key;
+            }
+        }
+
+        void reload() {
+            if(key == null) return;
+            try {
+                key = load(file);
+                reloads.incrementAndGet();
+            } catch(Exception e) {
+                // the previous key is kept until the file can be parsed
+            }
+        }
+    }
+}
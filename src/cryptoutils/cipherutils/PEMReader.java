@@ -0,0 +1,330 @@
+package cryptoutils.cipherutils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.crypto.Cipher;
+import javax.crypto.EncryptedPrivateKeyInfo;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Streaming reader of PEM files (RFC 7468) working on bytes: lines are read into a reused buffer, LF and CRLF line
+ * endings are both accepted, and base64 is decoded directly into the DER buffer of the object, without building strings.
+ * A file may hold any number of objects, each one returned by readObject with its type label.
+ * The following objects can be converted into keys:
+ * PRIVATE KEY (PKCS#8), ENCRYPTED PRIVATE KEY (encrypted PKCS#8), RSA PRIVATE KEY (PKCS#1), EC PRIVATE KEY (SEC1),
+ * PUBLIC KEY (X.509 SubjectPublicKeyInfo) and RSA PUBLIC KEY (PKCS#1).
+ * The legacy OpenSSL encryption of PKCS#1 and SEC1 keys (Proc-Type header) is not supported.
+ */
+public class PEMReader implements Closeable {
+    public static final String PRIVATE_KEY = "PRIVATE KEY";
+    public static final String ENCRYPTED_PRIVATE_KEY = "ENCRYPTED PRIVATE KEY";
+    public static final String RSA_PRIVATE_KEY = "RSA PRIVATE KEY";
+    public static final String EC_PRIVATE_KEY = "EC PRIVATE KEY";
+    public static final String PUBLIC_KEY = "PUBLIC KEY";
+    public static final String RSA_PUBLIC_KEY = "RSA PUBLIC KEY";
+    public static final String CERTIFICATE = "CERTIFICATE";
+    private static final byte[] BEGIN = "-----BEGIN ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "-----END ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DASHES = "-----".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PROC_TYPE = "Proc-Type:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VERSION_0 = {DER.INTEGER,0x01,0x00};
+    private static final byte[] DER_NULL = {DER.NULL,0x00};
+    private static final String PBES2_OID = "1.2.840.113549.1.5.13";
+    private static final byte[] BASE64_VALUES = new byte[256];
+    static {
+        Arrays.fill(BASE64_VALUES,(byte)-1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for(int i = 0; i < alphabet.length(); ++i) BASE64_VALUES[alphabet.charAt(i)] = (byte)i;
+    }
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int bufferPos = 0;
+    private int bufferLength = 0;
+    private byte[] line = new byte[128];
+    private int lineLength = 0;
+
+    /**
+     * @param in the stream the PEM objects are read from
+     */
+    public PEMReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next PEM object, skipping any text before its BEGIN line
+     * @return the PEMObject, null at the end of the stream
+     * @throws IOException if the stream cannot be read or the object is malformed
+     */
+    public PEMObject readObject() throws IOException {
+        String type = null;
+        while(type == null) {
+            if(!readLine()) return null;
+            if(startsWith(BEGIN) && endsWith(DASHES) && lineLength > BEGIN.length+DASHES.length)
+                type = new String(line,BEGIN.length,lineLength-BEGIN.length-DASHES.length,StandardCharsets.US_ASCII);
+        }
+        byte[] der = new byte[2048];
+        int derLength = 0, acc = 0, bits = 0;
+        boolean padded = false;
+        while(true) {
+            if(!readLine()) throw new IOException("missing END line of "+type);
+            if(startsWith(END)) {
+                if(lineLength != END.length+type.length()+DASHES.length || !endsWith(DASHES)
+                        || !type.equals(new String(line,END.length,type.length(),StandardCharsets.US_ASCII)))
+                    throw new IOException("mismatched END line of "+type);
+                break;
+            }
+            if(indexOf((byte)':') >= 0) {
+                // RFC 1421 encapsulated header
+                if(startsWith(PROC_TYPE)) throw new IOException("legacy encrypted PEM is not supported, use encrypted PKCS8");
+                continue;
+            }
+            for(int i = 0; i < lineLength; ++i) {
+                int c = line[i]&0xff;
+                if(c == '=') {
+                    padded = true;
+                    continue;
+                }
+                if(c == ' ' || c == '\t') continue;
+                int v = BASE64_VALUES[c];
+                if(v < 0 || padded) throw new IOException("invalid base64 in "+type);
+                acc = (acc<<6)|v;
+                bits+=6;
+                if(bits >= 8) {
+                    bits-=8;
+                    if(derLength == der.length) der = Arrays.copyOf(der,der.length*2);
+                    der[derLength++] = (byte)(acc>>bits);
+                    acc&=(1<<bits)-1;
+                }
+            }
+        }
+        return new PEMObject(type,Arrays.copyOf(der,derLength));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads all the PEM objects of a file
+     * @param file the PEM file
+     * @return the PEMObject objects, in order
+     * @throws IOException
+     */
+    public static List<PEMObject> readAll(Path file) throws IOException {
+        List<PEMObject> objects = new ArrayList<>();
+        try(PEMReader r = new PEMReader(Files.newInputStream(file))) {
+            PEMObject o;
+            while((o = r.readObject()) != null) objects.add(o);
+        }
+        return objects;
+    }
+
+    /**
+     * Reads the first private key of a PEM file
+     * @param file      the PEM file
+     * @param password  the password of an encrypted key, null if the key is not encrypted
+     * @return  the PrivateKey object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException if the file holds no private key or it cannot be decoded
+     * @throws IOException
+     */
+    public static PrivateKey readPrivateKey(Path file,char[] password) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+        try(PEMReader r = new PEMReader(Files.newInputStream(file))) {
+            PEMObject o;
+            while((o = r.readObject()) != null)
+                if(o.isPrivateKey()) return toPrivateKey(o,password);
+        }
+        throw new InvalidKeySpecException("no private key in "+file);
+    }
+
+    /**
+     * Reads the first public key of a PEM file
+     * @param file the PEM file
+     * @return  the PublicKey object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException if the file holds no public key or it cannot be decoded
+     * @throws IOException
+     */
+    public static PublicKey readPublicKey(Path file) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+        try(PEMReader r = new PEMReader(Files.newInputStream(file))) {
+            PEMObject o;
+            while((o = r.readObject()) != null)
+                if(o.getType().equals(PUBLIC_KEY) || o.getType().equals(RSA_PUBLIC_KEY)) return toPublicKey(o);
+        }
+        throw new InvalidKeySpecException("no public key in "+file);
+    }
+
+    /**
+     * Converts a private key object into a PrivateKey, detecting the key algorithm
+     * @param o         the PEMObject object
+     * @param password  the password of an encrypted key, null if the key is not encrypted
+     * @return  the PrivateKey object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException
+     */
+    public static PrivateKey toPrivateKey(PEMObject o,char[] password) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        byte[] pkcs8;
+        try {
+            switch(o.type) {
+                case PRIVATE_KEY:
+                    pkcs8 = o.der;
+                    break;
+                case RSA_PRIVATE_KEY:
+                    pkcs8 = DER.encode(DER.SEQUENCE,VERSION_0,DER.encode(DER.SEQUENCE,DER.encode(DER.OID,DER.OID_RSA),DER_NULL),DER.encode(DER.OCTET_STRING,o.der));
+                    break;
+                case EC_PRIVATE_KEY:
+                    // SEC1: SEQUENCE { INTEGER 1, OCTET STRING key, [0] OBJECT IDENTIFIER curve, [1] BIT STRING public key }
+                    DER.Reader r = new DER.Reader(o.der).enter(DER.SEQUENCE);
+                    r.skip(DER.INTEGER);
+                    r.skip(DER.OCTET_STRING);
+                    if(r.peekTag() != DER.CONTEXT_0) throw new InvalidKeySpecException("EC key without curve");
+                    byte[] curve = r.enter(DER.CONTEXT_0).readElement(DER.OID);
+                    pkcs8 = DER.encode(DER.SEQUENCE,VERSION_0,DER.encode(DER.SEQUENCE,DER.encode(DER.OID,DER.OID_EC),curve),DER.encode(DER.OCTET_STRING,o.der));
+                    break;
+                case ENCRYPTED_PRIVATE_KEY:
+                    if(password == null) throw new InvalidKeySpecException("the private key is encrypted");
+                    pkcs8 = decrypt(o.der,password);
+                    break;
+                default:
+                    throw new InvalidKeySpecException("not a private key: "+o.type);
+            }
+        } catch(IOException e) {
+            throw new InvalidKeySpecException("malformed "+o.type);
+        }
+        KeyFactory kf = KeyFactory.getInstance(DER.getKeyAlgorithm(pkcs8,true));
+        return kf.generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+    }
+
+    /**
+     * Converts a public key object into a PublicKey, detecting the key algorithm
+     * @param o the PEMObject object
+     * @return  the PublicKey object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException
+     */
+    public static PublicKey toPublicKey(PEMObject o) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        switch(o.type) {
+            case PUBLIC_KEY:
+                return CryptoManager.decodePublicKey(o.der);
+            case RSA_PUBLIC_KEY:
+                byte[] spki = DER.encode(DER.SEQUENCE,DER.encode(DER.SEQUENCE,DER.encode(DER.OID,DER.OID_RSA),DER_NULL),DER.encode(DER.BIT_STRING,new byte[1],o.der));
+                return CryptoManager.decodePublicKey(spki);
+            default:
+                throw new InvalidKeySpecException("not a public key: "+o.type);
+        }
+    }
+
+    private static byte[] decrypt(byte[] der,char[] password) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+        EncryptedPrivateKeyInfo epki = new EncryptedPrivateKeyInfo(der);
+        AlgorithmParameters params = epki.getAlgParameters();
+        String alg = epki.getAlgName();
+        // PBES2 (the OpenSSL default) is not an algorithm of its own: the actual scheme, e.g. PBEWithHmacSHA256AndAES_256,
+        // is named after the PRF and the encryption scheme of its parameters
+        if(alg.equals("PBES2") || alg.equals(PBES2_OID)) alg = DER.getPBES2Algorithm(der);
+        try {
+            SecretKeyFactory skf = SecretKeyFactory.getInstance(alg);
+            Cipher cipher = Cipher.getInstance(alg);
+            cipher.init(Cipher.DECRYPT_MODE,skf.generateSecret(new PBEKeySpec(password)),params);
+            return epki.getKeySpec(cipher).getEncoded();
+        } catch(NoSuchAlgorithmException e) {
+            throw e;
+        } catch(GeneralSecurityException e) {
+            throw new InvalidKeySpecException("cannot decrypt the private key, wrong password?");
+        }
+    }
+
+    /**
+     * Reads the next line into the line buffer, without the line terminator and the trailing whitespace
+     * @return false at the end of the stream
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean read = false;
+        while(true) {
+            if(bufferPos == bufferLength) {
+                bufferLength = in.read(buffer,0,buffer.length);
+                bufferPos = 0;
+                if(bufferLength <= 0) {
+                    bufferLength = 0;
+                    break;
+                }
+            }
+            read = true;
+            byte b = buffer[bufferPos++];
+            if(b == '\n') break;
+            if(lineLength == line.length) line = Arrays.copyOf(line,line.length*2);
+            line[lineLength++] = b;
+        }
+        while(lineLength > 0 && (line[lineLength-1] == '\r' || line[lineLength-1] == ' ' || line[lineLength-1] == '\t')) lineLength--;
+        return read;
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if(lineLength < prefix.length) return false;
+        for(int i = 0; i < prefix.length; ++i)
+            if(line[i] != prefix[i]) return false;
+        return true;
+    }
+
+    private boolean endsWith(byte[] suffix) {
+        if(lineLength < suffix.length) return false;
+        for(int i = 0, off = lineLength-suffix.length; i < suffix.length; ++i)
+            if(line[off+i] != suffix[i]) return false;
+        return true;
+    }
+
+    private int indexOf(byte b) {
+        for(int i = 0; i < lineLength; ++i)
+            if(line[i] == b) return i;
+        return -1;
+    }
+
+    /**
+     * An object read from a PEM file: its type label (e.g. "PRIVATE KEY") and its DER encoding
+     */
+    public static class PEMObject {
+        private final String type;
+        private final byte[] der;
+
+        PEMObject(String type,byte[] der) {
+            this.type = type;
+            this.der = der;
+        }
+
+        /**
+         * @return the type label, e.g. "PRIVATE KEY"
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return a copy of the DER encoding
+         */
+        public byte[] getEncoded() {
+            return der.clone();
+        }
+
+        /**
+         * @return whether the object is a private key, encrypted or not
+         */
+        public boolean isPrivateKey() {
+            return type.equals(PRIVATE_KEY) || type.equals(ENCRYPTED_PRIVATE_KEY) || type.equals(RSA_PRIVATE_KEY) || type.equals(EC_PRIVATE_KEY);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package cryptoutils.cipherutils;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+
+/**
+ * Asynchronous engine running RSA operations on a dedicated bounded pool of worker threads, so that the threads
+ * receiving handshakes (e.g. I/O threads) are never stalled by RSA private key operations.
+ * Every worker keeps the Cipher objects it initialized, per key, mode and padding: since doFinal resets a Cipher to
+ * its initialized state, the Cipher lookup and init are done once per worker instead of once per operation.
+ * The queue of pending operations is bounded: when it is full new operations are not queued but their futures
+ * complete exceptionally with a RejectedExecutionException, so the callers can shed load instead of blocking.
+ */
+public class RSAEngine {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final int MAX_CIPHERS_PER_WORKER = 16;
+    private static volatile RSAEngine defaultEngine = null;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+    private final ThreadLocal<Map<CipherKey,Cipher>> ciphers = new ThreadLocal<Map<CipherKey,Cipher>>() {
+        @Override
+        protected Map<CipherKey,Cipher> initialValue() {
+            return new LinkedHashMap<CipherKey,Cipher>(16,0.75f,true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CipherKey,Cipher> eldest) {
+                    return size() > MAX_CIPHERS_PER_WORKER;
+                }
+            };
+        }
+    };
+
+    /**
+     * @param threads       the number of worker threads
+     * @param queueCapacity the maximum number of operations waiting for a worker
+     */
+    public RSAEngine(int threads,int queueCapacity) {
+        if(threads < 1 || queueCapacity < 1) throw new IllegalArgumentException("threads and queueCapacity must be positive");
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads,threads,0,TimeUnit.MILLISECONDS,new ArrayBlockingQueue<Runnable>(queueCapacity),r -> {
+            Thread t = new Thread(r,"rsa-engine-"+count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Engine with a worker per available processor and a queue of DEFAULT_QUEUE_CAPACITY operations
+     */
+    public RSAEngine() {
+        this(Runtime.getRuntime().availableProcessors(),DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @return the engine shared by the whole application, created on first use
+     */
+    public static RSAEngine getDefault() {
+        RSAEngine e = defaultEngine;
+        if(e == null) {
+            synchronized(RSAEngine.class) {
+                e = defaultEngine;
+                if(e == null) defaultEngine = e = new RSAEngine();
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Encrypts byte[] object data by means of RSA with the PublicKey key and PKCS#1 v1.5 padding
+     * @param data  the data to be encrypted
+     * @param key   the public key
+     * @return  the future of the encrypted data
+     */
+    public CompletableFuture<byte[]> encrypt(byte[] data,PublicKey key) {
+        return encrypt(data,key,RSAPadding.PKCS1);
+    }
+
+    /**
+     * Encrypts byte[] object data by means of RSA with the PublicKey key and the given padding
+     * @param data      the data to be encrypted
+     * @param key       the public key
+     * @param padding   the padding
+     * @return  the future of the encrypted data
+     */
+    public CompletableFuture<byte[]> encrypt(final byte[] data,final PublicKey key,final RSAPadding padding) {
+        return submit(() -> doFinal(Cipher.ENCRYPT_MODE,key,padding,data));
+    }
+
+    /**
+     * Decrypts byte[] object cipherText by means of RSA with the PrivateKey key and PKCS#1 v1.5 padding
+     * @param cipherText    the encrypted data
+     * @param key           the private key
+     * @return  the future of the decrypted data
+     */
+    public CompletableFuture<byte[]> decrypt(byte[] cipherText,PrivateKey key) {
+        return decrypt(cipherText,key,RSAPadding.PKCS1);
+    }
+
+    /**
+     * Decrypts byte[] object cipherText by means of RSA with the PrivateKey key and the given padding
+     * @param cipherText    the encrypted data
+     * @param key           the private key
+     * @param padding       the padding used to encrypt
+     * @return  the future of the decrypted data
+     */
+    public CompletableFuture<byte[]> decrypt(final byte[] cipherText,final PrivateKey key,final RSAPadding padding) {
+        return submit(() -> doFinal(Cipher.DECRYPT_MODE,key,padding,cipherText));
+    }
+
+    /**
+     * Signs byte[] object data by means of a PrivateKey, see SignatureManager.sign
+     * @param data  the data to be signed
+     * @param alg   the algorithm to be used to sign
+     * @param key   the PrivateKey object to be used to sign
+     * @return  the future of the signature
+     */
+    public CompletableFuture<byte[]> sign(final byte[] data,final String alg,final PrivateKey key) {
+        return submit(() -> SignatureManager.sign(data,alg,key));
+    }
+
+    /**
+     * @return the number of operations waiting for a worker
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of operations that can still be queued before new ones are rejected
+     */
+    public int getRemainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    /**
+     * @return the approximate number of operations being run
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the approximate number of operations completed
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return the number of operations rejected because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops the workers once the queued operations are completed
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private CompletableFuture<byte[]> submit(final Operation op) {
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(op.run());
+                } catch(Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private byte[] doFinal(int mode,Key key,RSAPadding padding,byte[] data) throws GeneralSecurityException {
+        Map<CipherKey,Cipher> map = ciphers.get();
+        CipherKey k = new CipherKey(mode,key,padding);
+        Cipher cipher = map.remove(k);
+        if(cipher == null) {
+            cipher = Cipher.getInstance(padding.getTransformation());
+            padding.init(cipher,mode,key);
+        }
+        byte[] out = cipher.doFinal(data);
+        // put back only after a successful doFinal, which leaves the Cipher initialized with the same key
+        map.put(k,cipher);
+        return out;
+    }
+
+    private interface Operation {
+        byte[] run() throws Exception;
+    }
+
+    private static class CipherKey {
+        private final int mode;
+        private final Key key;
+        private final RSAPadding padding;
+
+        CipherKey(int mode,Key key,RSAPadding padding) {
+            this.mode = mode;
+            this.key = key;
+            this.padding = padding;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof CipherKey)) return false;
+            CipherKey k = (CipherKey)o;
+            return mode == k.mode && padding == k.padding && key.equals(k.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return (mode*31+padding.ordinal())*31+key.hashCode();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cryptoutils.cipherutils;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import javax.crypto.Cipher;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+
+/**
+ * RSA encryption paddings, each with an explicit transformation string so that the same padding is used whatever
+ * the provider defaults are. OAEP parameters are spelled out as well: providers disagree on the MGF1 digest implied
+ * by "OAEPWithSHA-256AndMGF1Padding", hence the parameter spec (SHA-256 for both the label hash and MGF1) is always
+ * passed to init. The wire id identifies the padding in the messages carrying RSA encrypted data.
+ */
+public enum RSAPadding {
+    PKCS1((byte)1,"RSA/ECB/PKCS1Padding",null),
+    OAEP_SHA256((byte)2,"RSA/ECB/OAEPWithSHA-256AndMGF1Padding",new OAEPParameterSpec("SHA-256","MGF1",MGF1ParameterSpec.SHA256,PSource.PSpecified.DEFAULT));
+
+    private final byte id;
+    private final String transformation;
+    private final AlgorithmParameterSpec params;
+
+    RSAPadding(byte id,String transformation,AlgorithmParameterSpec params) {
+        this.id = id;
+        this.transformation = transformation;
+        this.params = params;
+    }
+
+    /**
+     * @return the id of the padding in the wire formats
+     */
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * @return the transformation string, e.g. "RSA/ECB/PKCS1Padding"
+     */
+    public String getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * @param id the id of the padding in the wire formats
+     * @return the padding with the given id, null if unknown
+     */
+    public static RSAPadding fromId(byte id) {
+        for(RSAPadding p : values())
+            if(p.id == id) return p;
+        return null;
+    }
+
+    /**
+     * Initializes cipher with key and the parameters of this padding
+     * @param cipher    a Cipher object implementing getTransformation()
+     * @param mode      Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+     * @param key       the RSA key
+     * @throws InvalidKeyException
+     * @throws InvalidAlgorithmParameterException
+     */
+    void init(Cipher cipher,int mode,Key key) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if(params == null) cipher.init(mode,key);
+        else cipher.init(mode,key,params);
+    }
+}
@@ -0,0 +1,16 @@
+package cryptoutils.cipherutils;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * Source of revocation information used by ChainValidator, e.g. a CRL or an OCSP client.
+ * Implementations must be thread-safe: the certificates of many chains may be checked concurrently.
+ */
+public interface RevocationChecker {
+    /**
+     * @param certificate   the certificate to be checked
+     * @param issuer        the certificate of its issuer, whose signature on certificate has already been verified
+     * @return whether certificate has been revoked by issuer, or its revocation status cannot be established
+     */
+    boolean isRevoked(X509Certificate certificate,X509Certificate issuer);
+}
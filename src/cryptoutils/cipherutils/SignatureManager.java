@@ -1,14 +1,162 @@
 package cryptoutils.cipherutils;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.security.cert.Certificate;
+import java.security.interfaces.ECKey;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public class SignatureManager {
+    private static final long MAPPED_REGION_SIZE = 64L*1024*1024;
+    public static final String SHA256_WITH_RSA = "SHA256withRSA";
+    public static final String SHA256_WITH_ECDSA = "SHA256withECDSA";
+    public static final String SHA384_WITH_ECDSA = "SHA384withECDSA";
+    public static final String SHA512_WITH_ECDSA = "SHA512withECDSA";
+    public static final String ED25519 = "Ed25519";
+    public static final int DEFAULT_MAX_CACHED_HANDLES = 64;
+    private static int maxCachedHandles = DEFAULT_MAX_CACHED_HANDLES;
+    private static final Map<HandleKey,Object> HANDLES = new LinkedHashMap<HandleKey,Object>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<HandleKey,Object> eldest) {
+            return size() > maxCachedHandles;
+        }
+    };
+    
+    /**
+     * Returns the signature algorithm used by default with a key:
+     * SHA256withRSA for RSA keys, SHA256withECDSA (SHA384withECDSA, SHA512withECDSA) for EC keys on 256 (384, 521) bit curves,
+     * Ed25519 or Ed448 for EdDSA keys and SHA256withDSA for DSA keys
+     * @param key   the PrivateKey or PublicKey object
+     * @return  the signature algorithm
+     * @throws NoSuchAlgorithmException if the key type has no default signature algorithm
+     */
+    public static String getDefaultAlgorithm(Key key) throws NoSuchAlgorithmException {
+        switch(key.getAlgorithm()) {
+            case "RSA":
+                return SHA256_WITH_RSA;
+            case "EC":
+                int bits = (key instanceof ECKey)?((ECKey)key).getParams().getCurve().getField().getFieldSize():256;
+                if(bits > 384) return SHA512_WITH_ECDSA;
+                if(bits > 256) return SHA384_WITH_ECDSA;
+                return SHA256_WITH_ECDSA;
+            case "EdDSA":
+            case "Ed25519":
+            case "Ed448":
+                return key.getAlgorithm();
+            case "DSA":
+                return "SHA256withDSA";
+            default:
+                throw new NoSuchAlgorithmException("no default signature algorithm for "+key.getAlgorithm()+" keys");
+        }
+    }
+    
+    /**
+     * Returns the signature algorithm used by default with the public key of a certificate
+     * @param cert  the Certificate object
+     * @return  the signature algorithm
+     * @throws NoSuchAlgorithmException if the key type has no default signature algorithm
+     */
+    public static String getDefaultAlgorithm(Certificate cert) throws NoSuchAlgorithmException {
+        return getDefaultAlgorithm(cert.getPublicKey());
+    }
+    
+    /**
+     * Returns the cached Signer handle of a key, creating it if needed
+     * @param alg   the algorithm to be used to sign
+     * @param key   the PrivateKey object to be used to sign
+     * @return  the Signer object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static Signer getSigner(String alg,PrivateKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        HandleKey k = new HandleKey(alg,key);
+        Signer s = (Signer)getHandle(k);
+        if(s == null) {
+            s = new Signer(alg,key);
+            putHandle(k,s);
+        }
+        return s;
+    }
+    
+    /**
+     * Returns the cached Verifier handle of a key, creating it if needed
+     * @param alg   the algorithm to be used
+     * @param key   the PublicKey object to be used
+     * @return  the Verifier object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static Verifier getVerifier(String alg,PublicKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        HandleKey k = new HandleKey(alg,key);
+        Verifier v = (Verifier)getHandle(k);
+        if(v == null) {
+            v = new Verifier(alg,key);
+            putHandle(k,v);
+        }
+        return v;
+    }
+    
+    /**
+     * Returns the cached Verifier handle of a certificate, creating it if needed
+     * @param alg   the algorithm to be used
+     * @param cert  the certificate used to verify the signatures
+     * @return  the Verifier object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static Verifier getVerifier(String alg,Certificate cert) throws NoSuchAlgorithmException, InvalidKeyException {
+        HandleKey k = new HandleKey(alg,cert);
+        Verifier v = (Verifier)getHandle(k);
+        if(v == null) {
+            v = new Verifier(alg,cert);
+            putHandle(k,v);
+        }
+        return v;
+    }
+    
+    /**
+     * Sets the maximum number of Signer and Verifier handles kept by the cache; the least recently used are evicted first
+     * @param max the maximum number of cached handles, 0 disables the cache
+     */
+    public static void setMaxCachedHandles(int max) {
+        if(max < 0) throw new IllegalArgumentException("max cannot be negative");
+        synchronized(HANDLES) {
+            maxCachedHandles = max;
+            while(HANDLES.size() > max) HANDLES.remove(HANDLES.keySet().iterator().next());
+        }
+    }
+    
+    /**
+     * @return the maximum number of cached handles
+     */
+    public static int getMaxCachedHandles() {
+        synchronized(HANDLES) {
+            return maxCachedHandles;
+        }
+    }
+    
+    /**
+     * @return the number of handles currently cached
+     */
+    public static int getCachedHandleCount() {
+        synchronized(HANDLES) {
+            return HANDLES.size();
+        }
+    }
+    
     /**
      * Signs byte[] object representing data by means of a PrivateKey
      * @param data  the data to be signed
@@ -20,10 +168,20 @@ public class SignatureManager {
      * @throws SignatureException 
      */
     public static byte[] sign(byte[] data,String alg,PrivateKey key) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-        Signature signature = Signature.getInstance(alg);
-        signature.initSign(key);
-        signature.update(data);
-        return signature.sign();
+        return getSigner(alg,key).sign(data);
+    }
+    
+    /**
+     * Signs byte[] object representing data by means of a PrivateKey, with the default algorithm of the key
+     * @param data  the data to be signed
+     * @param key   the PrivateKey object to be used to sign
+     * @return  byte[] object representing the signature
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws SignatureException 
+     */
+    public static byte[] sign(byte[] data,PrivateKey key) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return sign(data,getDefaultAlgorithm(key),key);
     }
     
     /**
@@ -36,11 +194,7 @@ public class SignatureManager {
      */
     public static boolean verify(byte[] data,byte[] sign,String alg,PublicKey key) {
         try {
-            Signature sig = Signature.getInstance(alg);
-            sig.initVerify(key);
-            sig.update(data);
-            boolean res = sig.verify(sign);
-            return res;
+            return getVerifier(alg,key).verify(data,sign);
         } catch(Exception e) {
             return false;
         }
@@ -54,14 +208,160 @@ public class SignatureManager {
      * @return 
      */
     public static boolean verify(byte[] data,byte[] sign,String alg,Certificate cert) {
+        try {
+            return getVerifier(alg,cert).verify(data,sign);
+        } catch(Exception e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Verify a signature using a PublicKey, with the default algorithm of the key
+     * @param data  the signed data
+     * @param sign  the signature
+     * @param key   the PublicKey object to be used
+     * @return  boolean object stating whether the message is correctly signed or not 
+     */
+    public static boolean verify(byte[] data,byte[] sign,PublicKey key) {
+        try {
+            return verify(data,sign,getDefaultAlgorithm(key),key);
+        } catch(NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Verify a signature using a Certificate object, with the default algorithm of the certificate key
+     * @param data  the signed data
+     * @param sign  the signature
+     * @param cert  The certificate used to verify the signature
+     * @return  boolean object stating whether the message is correctly signed or not 
+     */
+    public static boolean verify(byte[] data,byte[] sign,Certificate cert) {
+        try {
+            return verify(data,sign,getDefaultAlgorithm(cert),cert);
+        } catch(NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Verifies all the signatures of a batch on the common ForkJoinPool
+     * @param batch the BatchVerifier object holding the signatures
+     * @return the bitmap of the valid signatures, bit i refers to the i-th signature added to the batch
+     * @throws InterruptedException
+     */
+    public static BitSet verifyBatch(BatchVerifier batch) throws InterruptedException {
+        return batch.verify(ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Verifies all the signatures of a batch on the given executor
+     * @param batch     the BatchVerifier object holding the signatures
+     * @param executor  the executor running the verifications
+     * @return the bitmap of the valid signatures, bit i refers to the i-th signature added to the batch
+     * @throws InterruptedException
+     */
+    public static BitSet verifyBatch(BatchVerifier batch,ExecutorService executor) throws InterruptedException {
+        return batch.verify(executor);
+    }
+    
+    /**
+     * Signs a whole file by means of a PrivateKey, mapping it in memory region by region so that even
+     * multi-GB files are signed without copying them into the heap
+     * @param file  the file to be signed
+     * @param alg   the algorithm to be used to sign
+     * @param key   the PrivateKey object to be used to sign
+     * @return  byte[] object representing the signature
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws SignatureException
+     * @throws IOException 
+     */
+    public static byte[] signFile(Path file,String alg,PrivateKey key) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException, IOException {
+        Signature signature = Signature.getInstance(alg);
+        signature.initSign(key);
+        update(signature,file);
+        return signature.sign();
+    }
+    
+    /**
+     * Verify the signature of a whole file using a PublicKey, mapping the file in memory region by region
+     * @param file  the signed file
+     * @param sign  the signature
+     * @param alg   the algorithm to be used
+     * @param key   the PublicKey object to be used
+     * @return  boolean object stating whether the file is correctly signed or not 
+     */
+    public static boolean verifyFile(Path file,byte[] sign,String alg,PublicKey key) {
+        try {
+            Signature sig = Signature.getInstance(alg);
+            sig.initVerify(key);
+            update(sig,file);
+            return sig.verify(sign);
+        } catch(Exception e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Verify the signature of a whole file using a Certificate object, mapping the file in memory region by region
+     * @param file  the signed file
+     * @param sign  the signature
+     * @param alg   the algorithm to be used
+     * @param cert  The certificate used to verify the signature
+     * @return  boolean object stating whether the file is correctly signed or not 
+     */
+    public static boolean verifyFile(Path file,byte[] sign,String alg,Certificate cert) {
         try {
             Signature sig = Signature.getInstance(alg);
             sig.initVerify(cert);
-            sig.update(data);
-            boolean res = sig.verify(sign);
-            return res;
+            update(sig,file);
+            return sig.verify(sign);
         } catch(Exception e) {
             return false;
         }
     }
+    
+    private static void update(Signature sig,Path file) throws IOException, SignatureException {
+        try(FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)) {
+            long size = ch.size();
+            for(long pos = 0; pos < size; pos+=MAPPED_REGION_SIZE)
+                sig.update(ch.map(FileChannel.MapMode.READ_ONLY,pos,Math.min(MAPPED_REGION_SIZE,size-pos)));
+        }
+    }
+    
+    private static Object getHandle(HandleKey k) {
+        synchronized(HANDLES) {
+            return HANDLES.get(k);
+        }
+    }
+    
+    private static void putHandle(HandleKey k,Object handle) {
+        synchronized(HANDLES) {
+            HANDLES.put(k,handle);
+        }
+    }
+    
+    private static class HandleKey {
+        private final String alg;
+        private final Object key;
+        
+        HandleKey(String alg,Object key) {
+            this.alg = alg;
+            this.key = key;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof HandleKey)) return false;
+            HandleKey k = (HandleKey)o;
+            return alg.equals(k.alg) && key.equals(k.key);
+        }
+        
+        @Override
+        public int hashCode() {
+            return alg.hashCode()*31+key.hashCode();
+        }
+    }
 }
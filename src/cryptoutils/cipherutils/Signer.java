@@ -0,0 +1,87 @@
+package cryptoutils.cipherutils;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * Signing handle bound to a PrivateKey and an algorithm, meant to be created once and used for every signature.
+ * Each thread keeps its own Signature object initialized with the key: since sign resets the Signature to its
+ * initialized state, the provider lookup and the key import are done only once per thread.
+ */
+public class Signer {
+    private final String alg;
+    private final PrivateKey key;
+    private final ThreadLocal<Signature> signature = new ThreadLocal<>();
+
+    /**
+     * @param alg   the algorithm to be used to sign, e.g. "SHA256withRSA"
+     * @param key   the PrivateKey object to be used to sign
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     */
+    public Signer(String alg,PrivateKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        this.alg = alg;
+        this.key = key;
+        getSignature();
+    }
+
+    /**
+     * @return the signature algorithm
+     */
+    public String getAlgorithm() {
+        return alg;
+    }
+
+    /**
+     * @return the PrivateKey object used to sign
+     */
+    public PrivateKey getKey() {
+        return key;
+    }
+
+    /**
+     * Signs byte[] object representing data
+     * @param data  the data to be signed
+     * @return  byte[] object representing the signature
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws SignatureException
+     */
+    public byte[] sign(byte[] data) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return sign(data,0,data.length);
+    }
+
+    /**
+     * Signs length bytes of data starting from offset
+     * @param data      the buffer holding the data to be signed
+     * @param offset    the offset of the data
+     * @param length    the length of the data
+     * @return  byte[] object representing the signature
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws SignatureException
+     */
+    public byte[] sign(byte[] data,int offset,int length) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        Signature s = getSignature();
+        try {
+            s.update(data,offset,length);
+            return s.sign();
+        } catch(SignatureException | RuntimeException e) {
+            signature.remove();
+            throw e;
+        }
+    }
+
+    private Signature getSignature() throws NoSuchAlgorithmException, InvalidKeyException {
+        Signature s = signature.get();
+        if(s == null) {
+            s = Signature.getInstance(alg);
+            s.initSign(key);
+            signature.set(s);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,100 @@
+package cryptoutils.cipherutils;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+
+/**
+ * Verification handle bound to a PublicKey (or a Certificate) and an algorithm, meant to be created once and used
+ * for every signature. Each thread keeps its own Signature object initialized with the key: since verify resets the
+ * Signature to its initialized state, the provider lookup and the key import are done only once per thread.
+ */
+public class Verifier {
+    private final String alg;
+    private final PublicKey key;
+    private final Certificate cert;
+    private final ThreadLocal<Signature> signature = new ThreadLocal<>();
+
+    /**
+     * @param alg   the algorithm to be used, e.g. "SHA256withRSA"
+     * @param key   the PublicKey object to be used
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     */
+    public Verifier(String alg,PublicKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        this(alg,key,null);
+    }
+
+    /**
+     * @param alg   the algorithm to be used, e.g. "SHA256withRSA"
+     * @param cert  the certificate used to verify the signatures
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     */
+    public Verifier(String alg,Certificate cert) throws NoSuchAlgorithmException, InvalidKeyException {
+        this(alg,cert.getPublicKey(),cert);
+    }
+
+    private Verifier(String alg,PublicKey key,Certificate cert) throws NoSuchAlgorithmException, InvalidKeyException {
+        this.alg = alg;
+        this.key = key;
+        this.cert = cert;
+        getSignature();
+    }
+
+    /**
+     * @return the signature algorithm
+     */
+    public String getAlgorithm() {
+        return alg;
+    }
+
+    /**
+     * @return the PublicKey object used to verify
+     */
+    public PublicKey getKey() {
+        return key;
+    }
+
+    /**
+     * Verify a signature
+     * @param data  the signed data
+     * @param sign  the signature
+     * @return  boolean object stating whether the message is correctly signed or not
+     */
+    public boolean verify(byte[] data,byte[] sign) {
+        return verify(data,0,data.length,sign);
+    }
+
+    /**
+     * Verify the signature of length bytes of data starting from offset
+     * @param data      the buffer holding the signed data
+     * @param offset    the offset of the data
+     * @param length    the length of the data
+     * @param sign      the signature
+     * @return  boolean object stating whether the message is correctly signed or not
+     */
+    public boolean verify(byte[] data,int offset,int length,byte[] sign) {
+        try {
+            Signature s = getSignature();
+            s.update(data,offset,length);
+            return s.verify(sign);
+        } catch(Exception e) {
+            signature.remove();
+            return false;
+        }
+    }
+
+    private Signature getSignature() throws NoSuchAlgorithmException, InvalidKeyException {
+        Signature s = signature.get();
+        if(s == null) {
+            s = Signature.getInstance(alg);
+            if(cert != null) s.initVerify(cert);
+            else s.initVerify(key);
+            signature.set(s);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,60 @@
+package cryptoutils.communication;
+
+import cryptoutils.cipherutils.CRLIndex;
+import cryptoutils.cipherutils.SignatureManager;
+import cryptoutils.messagebuilder.MessageBuilder;
+import java.io.ByteArrayInputStream;
+import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.cert.*;
+
+/**
+ * Fetches the CRL from a TrustedPartyInterface and installs it into a CRLIndex.
+ * The response of getCRL has the format < signature_length,signature,crl,nonce >, where the signature is computed by
+ * the authority on crl||nonce: the nonce chosen by the client proves the freshness of the response.
+ */
+public class CRLUpdater {
+    private static final int NONCE_SIZE = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Fetches the CRL of the authority and verifies the signature and the freshness of the response
+     * @param trustedParty  the trusted party serving the CRL
+     * @param authority     the certificate of the authority signing the CRL
+     * @return the CRL
+     * @throws RemoteException
+     * @throws CRLException if the response is malformed, stale or not signed by authority
+     */
+    public static X509CRL fetchCRL(TrustedPartyInterface trustedParty,Certificate authority) throws RemoteException, CRLException {
+        byte[] nonce = new byte[NONCE_SIZE];
+        RANDOM.nextBytes(nonce);
+        byte[] response = trustedParty.getCRL(nonce);
+        if(response == null || response.length < 4) throw new CRLException("no CRL received");
+        int signatureLength = MessageBuilder.toInt(MessageBuilder.extractFirstBytes(response,4));
+        if(signatureLength < 0 || signatureLength > response.length-4-NONCE_SIZE) throw new CRLException("malformed CRL response");
+        byte[] signature = MessageBuilder.extractRangeBytes(response,4,4+signatureLength);
+        byte[] signed = MessageBuilder.extractRangeBytes(response,4+signatureLength,response.length);
+        if(!MessageDigest.isEqual(MessageBuilder.extractLastBytes(signed,NONCE_SIZE),nonce)) throw new CRLException("stale CRL response");
+        if(!SignatureManager.verify(signed,signature,authority)) throw new CRLException("invalid CRL response signature");
+        try {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            return (X509CRL)cf.generateCRL(new ByteArrayInputStream(signed,0,signed.length-NONCE_SIZE));
+        } catch(CertificateException e) {
+            throw new CRLException(e);
+        }
+    }
+
+    /**
+     * Fetches the CRL of the authority and installs it into index, see CRLIndex.update
+     * @param trustedParty  the trusted party serving the CRL
+     * @param authority     the certificate of the authority signing the response and the CRL
+     * @param index         the CRLIndex object to be updated
+     * @return whether the CRL has been installed, false if it is older than the installed one
+     * @throws RemoteException
+     * @throws CRLException if the response or the CRL is not valid
+     */
+    public static boolean refresh(TrustedPartyInterface trustedParty,X509Certificate authority,CRLIndex index) throws RemoteException, CRLException {
+        return index.update(fetchCRL(trustedParty,authority),authority);
+    }
+}
@@ -0,0 +1,300 @@
+package cryptoutils.communication;
+
+import cryptoutils.cipherutils.*;
+import cryptoutils.hashutils.HashManager;
+import cryptoutils.hashutils.MacKey;
+import cryptoutils.messagebuilder.MessageBuilder;
+import java.io.*;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.SignatureException;
+import java.security.cert.*;
+import java.security.spec.InvalidKeySpecException;
+import java.time.Instant;
+
+/**
+ * This class represents a handshake message carrying an ephemeral key agreement public key (X25519 or ECDH P-256),
+ * the variant of Request without RSA key transport. Both parties send one: the issuer to the recipient and then
+ * the recipient back to the issuer. Each one signs its ephemeral key with its certified key, and the session keys
+ * are derived by means of HKDF-SHA256 from the shared secret of the two ephemeral keys, so a handshake costs two
+ * scalar multiplications and the session keys cannot be recovered from the long term keys (forward secrecy).
+ * Certificate is the issuer certificate to prove its identity (signed by ttp)
+ * EphemeralKey is the X.509 encoding of the issuer ephemeral public key
+ * Timestamp is used to prevent reply attacks
+ * Signature is the digital signature of the request to prevent tampering
+ */
+public class KeyAgreementRequest {
+    public static final String X25519 = "X25519";
+    public static final String ECDH_P256 = "EC";
+    public static final int ENCRYPTION_KEY_SIZE = 32;
+    public static final int MAC_KEY_SIZE = 32;
+    private static final String KDF_ALG = "HmacSHA256";
+    private static final byte[] KDF_LABEL = "cryptoutils key agreement v1".getBytes();
+    private final static long SLEEK_TH = 60*1000;
+    private final static int NUM_FIELDS = 6;
+    private final String issuer;
+    private final String recipient;
+    private final Certificate certificate;
+    private final byte[] ephemeralKey;
+    private final byte[] timestamp;
+    private byte[] signature = null;
+    private PrivateKey ephemeralPrivateKey = null;
+
+    /**
+     * Decode the byte[] array enc into a KeyAgreementRequest object
+     * @param enc the byte array
+     * @return the request object
+     * @throws CertificateException
+     */
+    public static KeyAgreementRequest fromEncodedRequest(byte[] enc) throws CertificateException {
+        int sizeBuf; int pointer = 0; byte[][] fields = new byte[NUM_FIELDS][];
+        for(int i = 0; i < NUM_FIELDS && pointer+4 <= enc.length; ++i) {
+            sizeBuf = MessageBuilder.toInt(MessageBuilder.extractRangeBytes(enc, pointer, pointer+4)); pointer+=4;
+            if(sizeBuf < 0 || sizeBuf > enc.length-pointer) throw new CertificateException();
+            fields[i] = MessageBuilder.extractRangeBytes(enc, pointer, pointer+sizeBuf);
+            pointer+=sizeBuf;
+        }
+        if(pointer != enc.length || fields[NUM_FIELDS-1] == null || fields[4].length != 8) throw new CertificateException();
+        Certificate certificate = CertificateManager.decodeCertificate(fields[2]);
+        return new KeyAgreementRequest(new String(fields[0]),new String(fields[1]),certificate,fields[3],fields[4],fields[5]);
+    }
+
+    /**
+     * Issuer constructor, it generates the ephemeral key pair
+     * @param issuer
+     * @param recipient
+     * @param certificate
+     * @param alg the key agreement algorithm, X25519 or ECDH_P256
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidAlgorithmParameterException
+     */
+    public KeyAgreementRequest(String issuer,String recipient,Certificate certificate,String alg) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+        KeyPair ephemeral = CryptoManager.generateKeyAgreementKeyPair(alg);
+        this.issuer = issuer;
+        this.recipient = recipient;
+        this.certificate = certificate;
+        this.ephemeralKey = ephemeral.getPublic().getEncoded();
+        this.ephemeralPrivateKey = ephemeral.getPrivate();
+        this.timestamp = MessageBuilder.toByteArray(Instant.now().toEpochMilli());
+    }
+
+    /**
+     * Private constructor used only by the decoding operations
+     */
+    private KeyAgreementRequest(String issuer,String recipient,Certificate certificate,byte[] ephemeralKey,byte[] timestamp,byte[] signature) {
+        this.issuer = issuer;
+        this.recipient = recipient;
+        this.certificate = certificate;
+        this.ephemeralKey = ephemeralKey;
+        this.timestamp = timestamp;
+        this.signature = signature;
+    }
+
+    /**
+     * Signs the request by means of the issuer private key, with the default signature algorithm of the key
+     * @param key
+     * @throws CertificateEncodingException
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws SignatureException
+     */
+    public void sign(PrivateKey key) throws CertificateEncodingException, NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        signature = SignatureManager.sign(getSignedData(), key);
+    }
+
+    /**
+     * Verifies the signature using the certificate embedded into the request
+     * @return
+     */
+    public boolean verifySignature() {
+        try {
+            return SignatureManager.verify(getSignedData(), signature, certificate);
+        } catch(Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the encoded bytes of the request. The byte[] representation has the format < field_length,field_content >
+     * @return
+     * @throws CertificateEncodingException
+     */
+    public byte[] getEncoded() throws CertificateEncodingException {
+        if(signature == null) return null;
+        byte[] sB = signature; byte[] sL = MessageBuilder.toByteArray(sB.length);
+        return MessageBuilder.concatBytes(getSignedData(),sL,sB);
+    }
+
+    /**
+     * Derives the session keys from the own ephemeral private key and the ephemeral public key of the peer.
+     * It must be called once, on the request built by this party, after peer has been verified by means of verify;
+     * the ephemeral private key is discarded afterwards. Both parties derive the same keys.
+     * @param peer the request received from the other party
+     * @return the session keys
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException
+     * @throws InvalidKeyException
+     */
+    public SessionKeys deriveKeys(KeyAgreementRequest peer) throws NoSuchAlgorithmException, InvalidKeySpecException, InvalidKeyException {
+        if(ephemeralPrivateKey == null) throw new IllegalStateException("no ephemeral private key");
+        if(!issuer.equals(peer.recipient) || !recipient.equals(peer.issuer)) throw new InvalidKeyException("the peer request belongs to another handshake");
+        byte[] sharedSecret = CryptoManager.computeSharedSecret(ephemeralPrivateKey, CryptoManager.decodePublicKey(peer.ephemeralKey));
+        ephemeralPrivateKey = null;
+        // the two messages are ordered by ephemeral key, so that both parties build the same salt and info
+        boolean first = compare(ephemeralKey, peer.ephemeralKey) < 0;
+        KeyAgreementRequest a = first?this:peer, b = first?peer:this;
+        byte[] salt = MessageBuilder.concatBytes(a.ephemeralKey,b.ephemeralKey);
+        byte[] info = MessageBuilder.concatBytes(KDF_LABEL,a.issuer.getBytes(),new byte[1],b.issuer.getBytes());
+        byte[] okm = HashManager.hkdf(salt,sharedSecret,info,ENCRYPTION_KEY_SIZE+MAC_KEY_SIZE,KDF_ALG);
+        return new SessionKeys(MessageBuilder.extractFirstBytes(okm,ENCRYPTION_KEY_SIZE),MessageBuilder.extractRangeBytes(okm,ENCRYPTION_KEY_SIZE,okm.length));
+    }
+
+    /**
+     * Get the request issuer name
+     * @return
+     */
+    public String getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * Get the recipient name
+     * @return
+     */
+    public String getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * Get the X.509 encoding of the ephemeral public key
+     * @return
+     */
+    public byte[] getEphemeralKey() {
+        return ephemeralKey.clone();
+    }
+
+    /**
+     * Verifies the certificate using the releasing authority certificate
+     * @param authority
+     * @return
+     */
+    public boolean verifyCertificate(Certificate authority) {
+        return CertificateManager.verifyCertificate((X509Certificate)certificate, authority);
+    }
+
+    /**
+     * Verifies the certificate through a path of intermediate CAs up to a trust anchor of validator
+     * @param validator the ChainValidator object holding the trust anchors and the intermediate CAs
+     * @return
+     */
+    public boolean verifyCertificate(ChainValidator validator) {
+        return CertificateManager.verifyCertificate((X509Certificate)certificate, validator);
+    }
+
+    /**
+     * Get the timestamp
+     * @return
+     */
+    public Instant getTimestamp() {
+        return MessageBuilder.getTimestamp(timestamp, 0);
+    }
+
+    /**
+     * Verify the freshness and message origin authentication of the request
+     * @param authority         Certificate of the CA to verify issuer certificate
+     * @param expectedSubject   Nickname expected to be contained in the certificate SN
+     * @return
+     */
+    public boolean verify(Certificate authority,String expectedSubject) {
+        return verify(verifySignature() && verifyCertificate(authority),expectedSubject);
+    }
+
+    /**
+     * Verify the freshness and message origin authentication of the request, validating the issuer certificate
+     * through a path of intermediate CAs
+     * @param validator         the ChainValidator object holding the trust anchors and the intermediate CAs
+     * @param expectedSubject   Nickname expected to be contained in the certificate SN
+     * @return
+     */
+    public boolean verify(ChainValidator validator,String expectedSubject) {
+        return verify(verifySignature() && verifyCertificate(validator),expectedSubject);
+    }
+
+    /**
+     * Verify the freshness and message origin authentication of the request, checking that the issuer certificate
+     * has not been revoked by authority (e.g. by means of a CRLIndex)
+     * @param authority         Certificate of the CA to verify issuer certificate
+     * @param expectedSubject   Nickname expected to be contained in the certificate SN
+     * @param revocation        the source of revocation information
+     * @return
+     */
+    public boolean verify(Certificate authority,String expectedSubject,RevocationChecker revocation) {
+        return verify(authority,expectedSubject) && !revocation.isRevoked((X509Certificate)certificate,(X509Certificate)authority);
+    }
+
+    private boolean verify(boolean certified,String expectedSubject) {
+        boolean verified = certified;
+        String subject = CertificateManager.getCertificateSubjectName((X509Certificate)certificate);
+        if(subject == null) return false;
+        if(expectedSubject != null)
+            verified&=(expectedSubject.equals(subject) && issuer.equals(expectedSubject));
+        verified&=(subject.equals(issuer));
+        Instant now = Instant.now();
+        verified&=!(getTimestamp().isAfter(now.plusMillis(SLEEK_TH))||getTimestamp().isBefore(now.minusMillis(SLEEK_TH)));
+        return verified;
+    }
+
+    public Certificate getCertificate(){
+        return certificate;
+    }
+
+    /**
+     * Length-prefixed encoding of every field but the signature
+     */
+    private byte[] getSignedData() throws CertificateEncodingException {
+        byte[] iB = issuer.getBytes(); byte[] iL = MessageBuilder.toByteArray(iB.length);
+        byte[] rB = recipient.getBytes(); byte[] rL = MessageBuilder.toByteArray(rB.length);
+        byte[] cB = certificate.getEncoded(); byte[] cL = MessageBuilder.toByteArray(cB.length);
+        byte[] eB = ephemeralKey; byte[] eL = MessageBuilder.toByteArray(eB.length);
+        byte[] nB = timestamp; byte[] nL = MessageBuilder.toByteArray(nB.length);
+        return MessageBuilder.concatBytes(iL,iB,rL,rB,cL,cB,eL,eB,nL,nB);
+    }
+
+    private static int compare(byte[] a,byte[] b) {
+        for(int i = 0; i < Math.min(a.length,b.length); ++i) {
+            int d = (a[i]&0xff)-(b[i]&0xff);
+            if(d != 0) return d;
+        }
+        return a.length-b.length;
+    }
+
+    /**
+     * The keys of a session established by means of KeyAgreementRequest, to be used with SecureEndpoint
+     */
+    public static class SessionKeys {
+        private final AesKey encryptionKey;
+        private final MacKey macKey;
+
+        private SessionKeys(byte[] encryptionKey,byte[] macKey) {
+            this.encryptionKey = new AesKey(encryptionKey);
+            this.macKey = new MacKey(macKey,SecureEndpoint.AUTH_ALG);
+        }
+
+        /**
+         * @return the AES-256 encryption key
+         */
+        public AesKey getEncryptionKey() {
+            return encryptionKey;
+        }
+
+        /**
+         * @return the HMAC-SHA256 authentication key
+         */
+        public MacKey getMacKey() {
+            return macKey;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.security.SecureRandom;
 import java.security.SignatureException;
 import java.security.cert.*;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 import javax.crypto.*;
 
 /**
@@ -19,6 +20,12 @@ import javax.crypto.*;
  * SecretKey is the shared secret key (encrypted by means of recipient public key)
  * Timestamp is used to prevent reply attacks (encrypted by means of recipient public key)
  * Signature is the digital signature of the request to prevent tampering
+ * Padding is the id of the RSA padding of SecretKey; it is present, and signed, only when the padding is not PKCS#1 v1.5,
+ * so requests with PKCS#1 padding have the 6 fields format of older versions.
+ * The padding field is not authenticated when the secret key is decrypted, the signature being checked afterwards:
+ * stripping it turns an OAEP request into a PKCS#1 one. The fromEncryptedRequest* methods without a padding argument
+ * accept PKCS#1 requests, exposing the recipient to padding oracle attacks; recipients expecting OAEP requests must
+ * use the overloads taking the required padding, which reject any other padding before the private key is used.
  */
 public class Request {
     private final static long SLEEK_TH = 60*1000;
@@ -28,33 +35,40 @@ public class Request {
     private byte[] secretKey;
     private byte[] timestamp = null;
     private byte[] signature = null;
+    private final RSAPadding padding;
     private final static int NUM_FIELDS = 6;
+    private final static int NUM_FIELDS_WITH_PADDING = 7;
     
     /**
-     * Decode the byte[] array enc into a Request object
-     * @param enc the byte array
+     * Decode the byte[] array enc into a Request object whose secret key is encrypted with the given padding
+     * @param enc       the byte array
+     * @param required  the required RSA padding, null to accept the padding of the request
      * @return the request object
-     * @throws CertificateException 
+     * @throws CertificateException if the request is malformed or its padding is not the required one
      */
-    private static Request fromEncodedRequest(byte[] enc) throws CertificateException {
-        int sizeBuf; int pointer = 0; byte[][] fields = new byte[NUM_FIELDS][];
-        for(int i = 0; i < NUM_FIELDS && pointer < enc.length; ++i) {
+    private static Request fromEncodedRequest(byte[] enc,RSAPadding required) throws CertificateException {
+        int sizeBuf; int pointer = 0; byte[][] fields = new byte[NUM_FIELDS_WITH_PADDING][];
+        for(int i = 0; i < NUM_FIELDS_WITH_PADDING && pointer < enc.length; ++i) {
             byte[] lengthBytes = MessageBuilder.extractRangeBytes(enc, pointer,pointer+4); 
             sizeBuf = MessageBuilder.toInt(lengthBytes); pointer+= 4;
             byte[] contentBytes = MessageBuilder.extractRangeBytes(enc, pointer, pointer+sizeBuf); 
             pointer+=sizeBuf;            
             fields[i] = contentBytes;
         }
-        if(pointer != enc.length) throw new CertificateException();
+        if(pointer != enc.length || fields[NUM_FIELDS-1] == null) throw new CertificateException();
+        RSAPadding padding = RSAPadding.PKCS1;
+        if(fields[NUM_FIELDS] != null) {
+            padding = (fields[NUM_FIELDS].length == 1)?RSAPadding.fromId(fields[NUM_FIELDS][0]):null;
+            if(padding == null || padding == RSAPadding.PKCS1) throw new CertificateException("unsupported RSA padding");
+        }
+        if(required != null && padding != required) throw new CertificateException("unexpected RSA padding "+padding);
         String issuer = new String(fields[0]);
         String recipient = new String(fields[1]);
-        CertificateFactory certFactory =  CertificateFactory.getInstance("X.509");
-        InputStream is = new ByteArrayInputStream(fields[2]);
-        Certificate certificate = certFactory.generateCertificate(is);
+        Certificate certificate = CertificateManager.decodeCertificate(fields[2]);
         byte[] secretKey = fields[3];
         byte[]challengeNonce = fields[4];
         byte[] signature = fields[5];
-        return new Request(issuer,recipient,certificate,challengeNonce,signature,secretKey);
+        return new Request(issuer,recipient,certificate,challengeNonce,signature,secretKey,padding);
     }
     
     /**
@@ -70,19 +84,116 @@ public class Request {
      * @throws CertificateException 
      */
     public static Request fromEncryptedRequest(byte[] enc,PrivateKey key) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, CertificateException {
-        Request r = fromEncodedRequest(enc);
-        r.secretKey = CryptoManager.decryptRSA(r.secretKey, key);
+        return decrypt(fromEncodedRequest(enc,null),key);
+    }
+    
+    /**
+     * Decode an encrypted request contained into byte[] object by means of PrivateKey key, accepting only requests
+     * whose secret key is encrypted with the given padding
+     * @param enc       the encrypted request
+     * @param key       the private key
+     * @param required  the required RSA padding
+     * @return the Request object
+     * @throws NoSuchAlgorithmException
+     * @throws NoSuchPaddingException
+     * @throws InvalidKeyException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws CertificateException if the request is malformed or its padding is not required, checked before decrypting
+     */
+    public static Request fromEncryptedRequest(byte[] enc,PrivateKey key,RSAPadding required) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, CertificateException {
+        return decrypt(fromEncodedRequest(enc,required),key);
+    }
+    
+    private static Request decrypt(Request r,PrivateKey key) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        r.secretKey = CryptoManager.decryptRSA(r.secretKey, key, r.padding);
         return r;
     }
     
     /**
-     * Issuer constructor
+     * Decode an encrypted request contained into byte[] object by means of PrivateKey key, running the RSA decryption
+     * on the workers of engine so that the calling thread is not stalled by it
+     * @param enc       the encrypted request
+     * @param key       the private key
+     * @param engine    the RSAEngine object running the decryption
+     * @return the future of the Request object, completed exceptionally if the request is malformed (including the
+     * RuntimeExceptions thrown while parsing a truncated encoding), cannot be decrypted or the engine is overloaded
+     * (RejectedExecutionException)
+     */
+    public static CompletableFuture<Request> fromEncryptedRequestAsync(byte[] enc,PrivateKey key,RSAEngine engine) {
+        return fromEncryptedRequestAsync(enc, key, null, engine);
+    }
+    
+    /**
+     * Decode an encrypted request contained into byte[] object by means of PrivateKey key, accepting only requests
+     * whose secret key is encrypted with the given padding, and running the RSA decryption on the workers of engine
+     * @param enc       the encrypted request
+     * @param key       the private key
+     * @param required  the required RSA padding, null to accept the padding of the request
+     * @param engine    the RSAEngine object running the decryption
+     * @return the future of the Request object, completed exceptionally if the request is malformed or its padding is
+     * not required (CertificateException, before decrypting), cannot be decrypted or the engine is overloaded
+     * (RejectedExecutionException)
+     */
+    public static CompletableFuture<Request> fromEncryptedRequestAsync(byte[] enc,PrivateKey key,RSAPadding required,RSAEngine engine) {
+        final Request r;
+        try {
+            r = fromEncodedRequest(enc,required);
+        } catch(CertificateException | RuntimeException e) {
+            CompletableFuture<Request> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return engine.decrypt(r.secretKey, key, r.padding).thenApply(secretKey -> {
+            r.secretKey = secretKey;
+            return r;
+        });
+    }
+    
+    /**
+     * Decode an encrypted request contained into byte[] object by means of PrivateKey key, running the RSA decryption
+     * on the default RSAEngine
+     * @param enc the encrypted request
+     * @param key the private key
+     * @return the future of the Request object
+     */
+    public static CompletableFuture<Request> fromEncryptedRequestAsync(byte[] enc,PrivateKey key) {
+        return fromEncryptedRequestAsync(enc, key, RSAEngine.getDefault());
+    }
+    
+    /**
+     * Decode an encrypted request contained into byte[] object by means of PrivateKey key, accepting only requests
+     * whose secret key is encrypted with the given padding, and running the RSA decryption on the default RSAEngine
+     * @param enc       the encrypted request
+     * @param key       the private key
+     * @param required  the required RSA padding
+     * @return the future of the Request object
+     */
+    public static CompletableFuture<Request> fromEncryptedRequestAsync(byte[] enc,PrivateKey key,RSAPadding required) {
+        return fromEncryptedRequestAsync(enc, key, required, RSAEngine.getDefault());
+    }
+    
+    /**
+     * Issuer constructor, the secret key is encrypted with PKCS#1 v1.5 padding
      * @param issuer
      * @param recipient
      * @param certificate
      * @param secretKey 
      */
     public Request(String issuer,String recipient,Certificate certificate,byte[] secretKey) {
+        this(issuer,recipient,certificate,secretKey,RSAPadding.PKCS1);
+    }
+    
+    /**
+     * Issuer constructor
+     * @param issuer
+     * @param recipient
+     * @param certificate
+     * @param secretKey 
+     * @param padding the RSA padding used to encrypt the secret key, e.g. RSAPadding.OAEP_SHA256
+     */
+    public Request(String issuer,String recipient,Certificate certificate,byte[] secretKey,RSAPadding padding) {
+        this.padding = padding;
         this.certificate = certificate;
         this.recipient = recipient;
         this.issuer = issuer;
@@ -98,8 +209,10 @@ public class Request {
      * @param challengeNonce
      * @param signature
      * @param secretKey 
+     * @param padding
      */
-    private Request(String issuer,String recipient,Certificate certificate,byte[] challengeNonce,byte[] signature,byte[] secretKey) {
+    private Request(String issuer,String recipient,Certificate certificate,byte[] challengeNonce,byte[] signature,byte[] secretKey,RSAPadding padding) {
+        this.padding = padding;
         this.certificate = certificate;
         this.recipient = recipient;
         this.issuer = issuer;
@@ -109,7 +222,8 @@ public class Request {
     }    
     
     /**
-     * Signs the request by means of the issuer private key
+     * Signs the request by means of the issuer private key, with the default signature algorithm of the key
+     * (SHA256withRSA, SHA256withECDSA, Ed25519...), so that the recipient derives it from the issuer certificate
      * @param key
      * @throws CertificateEncodingException
      * @throws NoSuchAlgorithmException
@@ -117,23 +231,30 @@ public class Request {
      * @throws SignatureException 
      */
     public void sign(PrivateKey key) throws CertificateEncodingException, NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-        byte[] data = MessageBuilder.concatBytes(issuer.getBytes(),recipient.getBytes(),certificate.getEncoded(),secretKey,timestamp);
-        signature = SignatureManager.sign(data, "SHA256withRSA", key);
+        signature = SignatureManager.sign(getSignedData(), key);
     }
     
     /**
-     * Verifies the signature using the certificate embedded into the request
+     * Verifies the signature using the certificate embedded into the request, with the default signature algorithm of its key
      * @return 
      */
     public boolean verifySignature() {
         try {
-            byte[] data = MessageBuilder.concatBytes(issuer.getBytes(),recipient.getBytes(),certificate.getEncoded(),secretKey,timestamp);
-            return SignatureManager.verify(data, signature, "SHA256withRSA",certificate);
+            return SignatureManager.verify(getSignedData(), signature, certificate);
         } catch(Exception e) {
             return false;
         }
     }
     
+    /**
+     * The data covered by the signature, the padding id is included when it is encoded too
+     */
+    private byte[] getSignedData() throws CertificateEncodingException {
+        byte[] data = MessageBuilder.concatBytes(issuer.getBytes(),recipient.getBytes(),certificate.getEncoded(),secretKey,timestamp);
+        if(padding != RSAPadding.PKCS1) data = MessageBuilder.concatBytes(data,new byte[]{padding.getId()});
+        return data;
+    }
+    
     
     /**
      * Get the encoded bytes of the certificate. The byte[] representation has the format < field_length,field_content >
@@ -148,6 +269,7 @@ public class Request {
         byte[] nB = timestamp; byte[] nL = MessageBuilder.toByteArray(nB.length);
         byte[] sB = signature; byte[] sL = MessageBuilder.toByteArray(sB.length); 
         byte[] out = MessageBuilder.concatBytes(iL,iB,rL,rB,cL,cB,skL,skB,nL,nB,sL,sB);
+        if(padding != RSAPadding.PKCS1) out = MessageBuilder.concatBytes(out,MessageBuilder.toByteArray(1),new byte[]{padding.getId()});
         return out;
     }
     
@@ -165,11 +287,19 @@ public class Request {
     public byte[] getEncrypted(PublicKey recipientPublicKey) throws CertificateEncodingException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
         if(signature == null || timestamp == null) return null;
         System.out.println("SCRET KEY LENGTH " + secretKey.length);
-        secretKey = CryptoManager.encryptRSA(secretKey, recipientPublicKey);
+        secretKey = CryptoManager.encryptRSA(secretKey, recipientPublicKey, padding);
         byte[] encoded = getEncoded();
         return encoded;
     }
     
+    /**
+     * Get the RSA padding of the secret key, so that the recipient can refuse the paddings it does not accept
+     * @return 
+     */
+    public RSAPadding getPadding() {
+        return padding;
+    }
+    
     /**
      * Return the secretKey (plain)
      * @return 
@@ -204,6 +334,15 @@ public class Request {
         return CertificateManager.verifyCertificate(xc, authority);
     }
     
+    /**
+     * Verifies the certificate through a path of intermediate CAs up to a trust anchor of validator
+     * @param validator the ChainValidator object holding the trust anchors and the intermediate CAs
+     * @return 
+     */
+    public boolean verifyCertificate(ChainValidator validator) {
+        return CertificateManager.verifyCertificate((X509Certificate)certificate, validator);
+    }
+    
     /**
      * Gets the issuing authority of the certificate
      * @return 
@@ -245,8 +384,34 @@ public class Request {
      * @return 
      */
     public boolean verify(Certificate authority,String expectedSubject) {
-        boolean verified = true;
-        verified&=(verifySignature() && verifyCertificate(authority));
+        return verify(verifySignature() && verifyCertificate(authority),expectedSubject);
+    }
+    
+    /**
+     * Verify the freshness and message origin authentication of the request, validating the issuer certificate
+     * through a path of intermediate CAs
+     * @param validator         the ChainValidator object holding the trust anchors and the intermediate CAs
+     * @param expectedSubject   Nickname expected to be contained in the certificate SN
+     * @return 
+     */
+    public boolean verify(ChainValidator validator,String expectedSubject) {
+        return verify(verifySignature() && verifyCertificate(validator),expectedSubject);
+    }
+    
+    /**
+     * Verify the freshness and message origin authentication of the request, checking that the issuer certificate
+     * has not been revoked by authority (e.g. by means of a CRLIndex)
+     * @param authority         Certificate of the CA to verify issuer certificate
+     * @param expectedSubject   Nickname expected to be contained in the certificate SN
+     * @param revocation        the source of revocation information
+     * @return 
+     */
+    public boolean verify(Certificate authority,String expectedSubject,RevocationChecker revocation) {
+        return verify(authority,expectedSubject) && !revocation.isRevoked((X509Certificate)certificate,(X509Certificate)authority);
+    }
+    
+    private boolean verify(boolean certified,String expectedSubject) {
+        boolean verified = certified;
         String subject = CertificateManager.getCertificateSubjectName((X509Certificate)certificate);
         if(subject == null) return false;
         if(expectedSubject != null)
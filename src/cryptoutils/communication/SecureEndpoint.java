@@ -1,11 +1,12 @@
 package cryptoutils.communication;
 
+import cryptoutils.cipherutils.AesKey;
 import cryptoutils.cipherutils.CryptoManager;
 import cryptoutils.messagebuilder.MessageBuilder;
 import cryptoutils.hashutils.HashManager;
+import cryptoutils.hashutils.MacKey;
 import java.io.*;
 import java.time.Instant;
-import java.util.Random;
 
 public class SecureEndpoint {
     public final static String AUTH_ALG = "HmacSHA256";
@@ -16,7 +17,7 @@ public class SecureEndpoint {
             System.out.println("[SECURE SEND - "+Thread.currentThread().getName()+"]");
             byte[] timestampedMessage = MessageBuilder.insertTimestamp(data);
             byte[] hashedMessage = MessageBuilder.insertMAC(timestampedMessage,AUTH_ALG,authKey);
-            byte[] encryptedMessage = CryptoManager.encryptCBC(hashedMessage, encKey, new Random().nextInt()); 
+            byte[] encryptedMessage = CryptoManager.encryptCBC(hashedMessage, encKey); 
             ds.writeObject(encryptedMessage);
             System.out.println("[SEND-"+Thread.currentThread().getName()+"]: SENT ENCRYPTED MESSAGE");                        
             return true;
@@ -41,6 +42,86 @@ public class SecureEndpoint {
             return null;
         }        
     }
+    /**
+     * Sends data over ds using the session key handles encKey and authKey, created once per session
+     * @param data      the message
+     * @param ds        the output stream
+     * @param encKey    the encryption key handle
+     * @param authKey   the authentication key handle
+     * @return whether the message has been sent or not
+     */
+    public static boolean secureSend(byte[] data,ObjectOutputStream ds,AesKey encKey,MacKey authKey) {
+        try{
+            System.out.println("[SECURE SEND - "+Thread.currentThread().getName()+"]");
+            byte[] timestampedMessage = MessageBuilder.insertTimestamp(data);
+            byte[] hashedMessage = MessageBuilder.insertMAC(timestampedMessage,authKey);
+            byte[] encryptedMessage = CryptoManager.encryptCBC(hashedMessage, encKey); 
+            ds.writeObject(encryptedMessage);
+            System.out.println("[SEND-"+Thread.currentThread().getName()+"]: SENT ENCRYPTED MESSAGE");                        
+            return true;
+        } catch(Exception e) {
+            System.out.println("[SEND-"+Thread.currentThread().getName()+"] ERROR: "+e.getMessage());                        
+            return false;
+        }              
+    }
+    
+    /**
+     * Receives a message from di using the session key handles encKey and authKey, created once per session
+     * @param di        the input stream
+     * @param encKey    the encryption key handle
+     * @param authKey   the authentication key handle
+     * @return the plaintext, or null if the message is not authentic or not fresh
+     */
+    public static byte[] secureReceive(ObjectInputStream di,AesKey encKey,MacKey authKey) {
+        try {
+            byte[] buffer = (byte []) di.readObject();
+            byte[] decryptedMessage = CryptoManager.decryptCBC(buffer, encKey);
+            int macPosition = decryptedMessage.length-AUTH_MAC_SIZE;
+            Instant timeStamp = MessageBuilder.getTimestamp(decryptedMessage,macPosition-8);
+            boolean verified = (HashManager.verifyMAC(decryptedMessage, 0, macPosition, decryptedMessage, macPosition, AUTH_MAC_SIZE, authKey) && verifyTimestamp(timeStamp));    
+            return (verified)?MessageBuilder.extractFirstBytes(decryptedMessage,macPosition-8):null;
+        } catch(Exception e) {
+            System.out.println("[RECEIVE-"+Thread.currentThread().getName()+"] ERROR: "+e.getMessage());                        
+            return null;
+        }        
+    }
+    
+    /**
+     * Sends data over ds sealing the timestamped message in a single AES/GCM pass, instead of MAC and then encrypt
+     * @param data      the message
+     * @param ds        the output stream
+     * @param key       the session key handle, used for both confidentiality and authentication
+     * @return whether the message has been sent or not
+     */
+    public static boolean secureSendAEAD(byte[] data,ObjectOutputStream ds,AesKey key) {
+        try{
+            byte[] timestampedMessage = MessageBuilder.insertTimestamp(data);
+            byte[] encryptedMessage = CryptoManager.encryptGCM(timestampedMessage, null, key); 
+            ds.writeObject(encryptedMessage);
+            return true;
+        } catch(Exception e) {
+            return false;
+        }              
+    }
+    
+    /**
+     * Receives a message sent by means of secureSendAEAD
+     * @param di        the input stream
+     * @param key       the session key handle
+     * @return the plaintext, or null if the message is not authentic or not fresh
+     */
+    public static byte[] secureReceiveAEAD(ObjectInputStream di,AesKey key) {
+        try {
+            byte[] buffer = (byte []) di.readObject();
+            byte[] decryptedMessage = CryptoManager.decryptGCM(buffer, null, key);
+            Instant timeStamp = MessageBuilder.getTimestamp(decryptedMessage,decryptedMessage.length-8);
+            byte[] plainText = MessageBuilder.extractFirstBytes(decryptedMessage,decryptedMessage.length-8);
+            return (verifyTimestamp(timeStamp))?plainText:null;
+        } catch(Exception e) {
+            return null;
+        }        
+    }
+    
     private static boolean verifyTimestamp(Instant timeStamp){
         Instant now = Instant.now();
         return !(timeStamp.isAfter(now.plusMillis(TIME_TH))||timeStamp.isBefore(now.minusMillis(TIME_TH)));    
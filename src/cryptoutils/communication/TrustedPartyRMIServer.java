@@ -16,6 +16,7 @@ public class TrustedPartyRMIServer implements TrustedPartyInterface{
     private final String authorityKeyFile;
     private PrivateKey authKey = null;
     private String crlName = null;
+    private String signatureAlg = null;
     
     /**
      * p
@@ -23,11 +24,22 @@ public class TrustedPartyRMIServer implements TrustedPartyInterface{
      * @param authorityKeyFile the filename of the authority private key
      */
     public TrustedPartyRMIServer(String authorityCertificateFile,String authorityKeyFile,String crlName) {
+        this(authorityCertificateFile,authorityKeyFile,crlName,null);
+    }
+    
+    /**
+     * @param authorityCertificateFile the filename of the authority certificate 
+     * @param authorityKeyFile the filename of the authority private key (RSA, EC, Ed25519...)
+     * @param crlName the filename of the CRL
+     * @param signatureAlg the algorithm used to sign the CRL, null for the default algorithm of the key
+     */
+    public TrustedPartyRMIServer(String authorityCertificateFile,String authorityKeyFile,String crlName,String signatureAlg) {
         this.authorityCertificateFile= authorityCertificateFile;
         this.authorityKeyFile = authorityKeyFile;
         this.crlName = crlName;
         try{
-            this.authKey = CryptoManager.readRSAPrivateKeyFromPEMFile(authorityKeyFile);
+            this.authKey = CryptoManager.readPrivateKeyFromPEMFile(authorityKeyFile);
+            this.signatureAlg = (signatureAlg != null)?signatureAlg:SignatureManager.getDefaultAlgorithm(authKey);
         }catch(Exception ex){
             ex.printStackTrace();
             System.exit(-1);
@@ -43,7 +55,7 @@ public class TrustedPartyRMIServer implements TrustedPartyInterface{
     public byte[] getCRL(byte[] nonce) throws RemoteException {try {
         byte[] crlBytes = Files.readAllBytes(Paths.get(crlName));
         byte[] noncedCrlBytes = MessageBuilder.concatBytes(crlBytes,nonce);
-        byte[] signatureBytes = SignatureManager.sign(noncedCrlBytes,"SHA256withRSA", authKey);
+        byte[] signatureBytes = SignatureManager.sign(noncedCrlBytes,signatureAlg, authKey);
         byte[] signatureLength = MessageBuilder.toByteArray(signatureBytes.length);
         byte[] returnMessage = MessageBuilder.concatBytes(signatureLength,signatureBytes,noncedCrlBytes);
         return returnMessage;
@@ -1,23 +1,133 @@
 package cryptoutils.hashutils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.*;
-import java.util.Formatter;
+import java.util.Arrays;
+import java.util.HashMap;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
 public class HashManager {
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+    private static final ThreadLocal<HashMap<String,Mac>> MACS = new ThreadLocal<>();
+    static {
+        Arrays.fill(HEX_VALUES, (byte)-1);
+        for(int i = 0; i < 16; ++i) {
+            HEX_VALUES[HEX_LOWER[i]] = (byte)i;
+            HEX_VALUES[HEX_UPPER[i]] = (byte)i;
+        }
+    }
+    
     /**
      * Returns a String object composed by the hexadecimal representation of each byte[] array element
+     * (lower case, colon separated, e.g. "0a:ff:3c")
      * @param bytes the byte[] array to be converted
      * @return the hexadecimal String object
      */
     public static String toHexString(byte[] bytes) {
-            Formatter formatter = new Formatter();
-            for (byte b : bytes) {
-                    formatter.format("%02x:", b);
-            }
-            String tmp = formatter.toString();
-            return tmp.substring(0, tmp.length() - 1);
+        return toHexString(bytes,true,false);
+    }
+    
+    /**
+     * Returns a String object composed by the hexadecimal representation of each byte[] array element
+     * @param bytes         the byte[] array to be converted
+     * @param separators    whether bytes are separated by colons or not
+     * @param upperCase     whether hexadecimal digits are upper case or not
+     * @return the hexadecimal String object
+     */
+    public static String toHexString(byte[] bytes,boolean separators,boolean upperCase) {
+        char[] out = new char[getHexLength(bytes.length,separators)];
+        encodeHex(bytes,0,bytes.length,separators,upperCase,out,0);
+        return new String(out);
+    }
+    
+    /**
+     * Returns the number of characters of the hexadecimal representation of length bytes
+     * @param length        the number of bytes
+     * @param separators    whether bytes are separated by colons or not
+     * @return the number of characters
+     */
+    public static int getHexLength(int length,boolean separators) {
+        if(length == 0) return 0;
+        return (separators)?length*3-1:length*2;
+    }
+    
+    /**
+     * Writes the hexadecimal representation of length bytes of in starting from offset into the char[] object out
+     * @param in            the bytes to be converted
+     * @param offset        the offset in in
+     * @param length        the number of bytes to be converted
+     * @param separators    whether bytes are separated by colons or not
+     * @param upperCase     whether hexadecimal digits are upper case or not
+     * @param out           the output buffer, at least getHexLength(length,separators) chars long after outOffset
+     * @param outOffset     the offset in out
+     * @return the number of chars written
+     */
+    public static int encodeHex(byte[] in,int offset,int length,boolean separators,boolean upperCase,char[] out,int outOffset) {
+        char[] digits = (upperCase)?HEX_UPPER:HEX_LOWER;
+        int pos = outOffset;
+        for(int i = offset; i < offset+length; ++i) {
+            if(separators && i != offset) out[pos++] = ':';
+            out[pos++] = digits[(in[i] >> 4) & 0x0f];
+            out[pos++] = digits[in[i] & 0x0f];
+        }
+        return pos-outOffset;
+    }
+    
+    /**
+     * Appends the hexadecimal representation of length bytes of in starting from offset to the StringBuilder object sb
+     * @param sb            the StringBuilder object
+     * @param in            the bytes to be converted
+     * @param offset        the offset in in
+     * @param length        the number of bytes to be converted
+     * @param separators    whether bytes are separated by colons or not
+     * @param upperCase     whether hexadecimal digits are upper case or not
+     * @return sb
+     */
+    public static StringBuilder appendHex(StringBuilder sb,byte[] in,int offset,int length,boolean separators,boolean upperCase) {
+        char[] digits = (upperCase)?HEX_UPPER:HEX_LOWER;
+        sb.ensureCapacity(sb.length()+getHexLength(length,separators));
+        for(int i = offset; i < offset+length; ++i) {
+            if(separators && i != offset) sb.append(':');
+            sb.append(digits[(in[i] >> 4) & 0x0f]).append(digits[in[i] & 0x0f]);
+        }
+        return sb;
+    }
+    
+    /**
+     * Parses a hexadecimal String object, with or without colon separators and in any case,
+     * into the byte[] object it represents
+     * @param hex the hexadecimal String object, e.g. "0a:ff:3c" or "0AFF3C"
+     * @return the byte[] object
+     * @throws IllegalArgumentException if hex is not a valid hexadecimal representation
+     */
+    public static byte[] fromHexString(String hex) {
+        int len = hex.length();
+        boolean separators = len > 2 && hex.charAt(2) == ':';
+        int step = (separators)?3:2;
+        if((separators && len%3 != 2) || (!separators && len%2 != 0))
+            throw new IllegalArgumentException("invalid hexadecimal string length");
+        byte[] out = new byte[(len+step-2)/step];
+        for(int i = 0, pos = 0; pos < out.length; i+=step, ++pos) {
+            if(separators && pos != 0 && hex.charAt(i-1) != ':')
+                throw new IllegalArgumentException("missing separator at "+(i-1));
+            int hi = hexValue(hex.charAt(i));
+            int lo = hexValue(hex.charAt(i+1));
+            if(hi < 0 || lo < 0) throw new IllegalArgumentException("invalid hexadecimal digit at "+i);
+            out[pos] = (byte)((hi << 4) | lo);
+        }
+        return out;
+    }
+    
+    private static int hexValue(char c) {
+        return (c < 128)?HEX_VALUES[c]:-1;
     }
     
     /**
@@ -32,6 +142,145 @@ public class HashManager {
         return md.digest(bytes);
     }
     
+    /**
+     * Returns an object computing the hash incrementally, to hash inputs fed in fragments or too big to be kept in memory
+     * @param alg   the algorithm to be used
+     * @return  the IncrementalHash object
+     * @throws NoSuchAlgorithmException 
+     */
+    public static IncrementalHash newHash(String alg) throws NoSuchAlgorithmException {
+        return new IncrementalHash(alg);
+    }
+    
+    /**
+     * Compute the hash of everything read from in until its end, with constant memory usage; in is not closed
+     * @param in    the stream to be hashed
+     * @param alg   the algorithm to be used
+     * @return  the byte[] object representing the hash
+     * @throws NoSuchAlgorithmException
+     * @throws IOException 
+     */
+    public static byte[] doHash(InputStream in,String alg) throws NoSuchAlgorithmException, IOException {
+        return newHash(alg).update(in).doFinal();
+    }
+    
+    /**
+     * Compute the hash of everything read from in until its end, with constant memory usage; in is not closed
+     * @param in    the channel to be hashed
+     * @param alg   the algorithm to be used
+     * @return  the byte[] object representing the hash
+     * @throws NoSuchAlgorithmException
+     * @throws IOException 
+     */
+    public static byte[] doHash(ReadableByteChannel in,String alg) throws NoSuchAlgorithmException, IOException {
+        return newHash(alg).update(in).doFinal();
+    }
+    
+    /**
+     * Compute the hash of a whole file, mapping it in memory region by region so that even multi-GB files
+     * are hashed without copying them into the heap
+     * @param file  the file to be hashed
+     * @param alg   the algorithm to be used
+     * @return  the byte[] object representing the hash
+     * @throws NoSuchAlgorithmException
+     * @throws IOException 
+     */
+    public static byte[] hashFile(Path file,String alg) throws NoSuchAlgorithmException, IOException {
+        try(FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)) {
+            return newHash(alg).update(ch,0,ch.size()).doFinal();
+        }
+    }
+    
+    /**
+     * Compute the tree hash of the byte[] object, hashing leaves of TreeHash.DEFAULT_LEAF_SIZE bytes in parallel
+     * on the common ForkJoinPool. The output format is described in TreeHash and differs from doHash
+     * @param bytes the bytes to be hashed
+     * @param alg   the algorithm to be used
+     * @return  the byte[] object representing the root hash
+     * @throws NoSuchAlgorithmException 
+     */
+    public static byte[] doTreeHash(byte[] bytes,String alg) throws NoSuchAlgorithmException {
+        return new TreeHash(alg).hash(bytes);
+    }
+    
+    /**
+     * Compute the tree hash of a whole file, hashing leaves of TreeHash.DEFAULT_LEAF_SIZE bytes in parallel
+     * on the common ForkJoinPool. The output format is described in TreeHash and differs from hashFile
+     * @param file  the file to be hashed
+     * @param alg   the algorithm to be used
+     * @return  the byte[] object representing the root hash
+     * @throws NoSuchAlgorithmException
+     * @throws IOException 
+     */
+    public static byte[] treeHashFile(Path file,String alg) throws NoSuchAlgorithmException, IOException {
+        return new TreeHash(alg).hashFile(file);
+    }
+    
+    /**
+     * Returns an object computing the MAC incrementally, to authenticate inputs fed in fragments or too big to be kept in memory
+     * @param key   the session key handle
+     * @return  the IncrementalMAC object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static IncrementalMAC newMAC(MacKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        return new IncrementalMAC(key);
+    }
+    
+    /**
+     * Returns an object computing the MAC incrementally, to authenticate inputs fed in fragments or too big to be kept in memory
+     * @param key   the secret key
+     * @param alg   the algorithm to be used
+     * @return  the IncrementalMAC object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static IncrementalMAC newMAC(byte[] key,String alg) throws NoSuchAlgorithmException, InvalidKeyException {
+        return new IncrementalMAC(new MacKey(key,alg));
+    }
+    
+    /**
+     * Compute a Message authentication code over everything read from in until its end, with constant memory usage; in is not closed
+     * @param in    the stream to be authenticated
+     * @param key   the session key handle
+     * @return  the byte[] object representing the MAC
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws IOException 
+     */
+    public static byte[] doMAC(InputStream in,MacKey key) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        return newMAC(key).update(in).doFinal();
+    }
+    
+    /**
+     * Compute a Message authentication code over everything read from in until its end, with constant memory usage; in is not closed
+     * @param in    the channel to be authenticated
+     * @param key   the session key handle
+     * @return  the byte[] object representing the MAC
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws IOException 
+     */
+    public static byte[] doMAC(ReadableByteChannel in,MacKey key) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        return newMAC(key).update(in).doFinal();
+    }
+    
+    /**
+     * Compute a Message authentication code over a whole file, mapping it in memory region by region so that even multi-GB files
+     * are authenticated without copying them into the heap
+     * @param file  the file to be authenticated
+     * @param key   the session key handle
+     * @return  the byte[] object representing the MAC
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws IOException 
+     */
+    public static byte[] macFile(Path file,MacKey key) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        try(FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)) {
+            return newMAC(key).update(ch,0,ch.size()).doFinal();
+        }
+    }
+    
     /**
      * Compute a Message authentication code over the byte[] object, using the algorithm in String object alg and String object key as secret key
      * @param bytes 
@@ -43,14 +292,46 @@ public class HashManager {
      */
     public static byte[] doMAC(byte[] bytes,byte[] key,String alg) throws NoSuchAlgorithmException, InvalidKeyException {
         SecretKeySpec signKey = new SecretKeySpec(key,alg);
-        Mac m = Mac.getInstance(alg);
+        Mac m = getThreadMac(alg);
         m.init(signKey);
         return m.doFinal(bytes);
     }
     
+    /**
+     * Returns the Mac object of the calling thread for the algorithm alg, so that it is looked up only once per thread
+     * @param alg the MAC algorithm
+     * @return the Mac object, it must be initialized before use
+     * @throws NoSuchAlgorithmException 
+     */
+    private static Mac getThreadMac(String alg) throws NoSuchAlgorithmException {
+        HashMap<String,Mac> macs = MACS.get();
+        if(macs == null) {
+            macs = new HashMap<>();
+            MACS.set(macs);
+        }
+        Mac m = macs.get(alg);
+        if(m == null) {
+            m = Mac.getInstance(alg);
+            macs.put(alg, m);
+        }
+        return m;
+    }
+    
+    /**
+     * Compute a Message authentication code over the byte[] object, using the session key handle key
+     * @param bytes 
+     * @param key the session key handle, it carries the algorithm too
+     * @return  the byte[] object representing the MAC
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static byte[] doMAC(byte[] bytes,MacKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        return key.getMac().doFinal(bytes);
+    }
+    
     /**
      * Compare the mac provided with the mac computed over data using key as secret key and alg as algorithm
-     * It uses two-pass hash algorithm to avoid timing attacks.
+     * The MAC is computed once and compared in constant time to avoid timing attacks.
      * @param data
      * @param mac
      * @param key
@@ -61,8 +342,110 @@ public class HashManager {
      */
     public static boolean compareMAC(byte[] data,byte[] mac, byte[] key,String alg) throws InvalidKeyException, NoSuchAlgorithmException {
         byte[] computedMac = doMAC(data,key,alg);
-        byte[] computedMacMAC = doMAC(computedMac,key,alg);
-        byte[] macMAC = doMAC(mac,key,alg);
-        return MessageDigest.isEqual(computedMacMAC, macMAC);
+        return constantTimeEquals(computedMac, mac, 0, mac.length);
+    }
+    
+    /**
+     * Compare the mac provided with the mac computed over data using the session key handle key
+     * The MAC is computed once and compared in constant time to avoid timing attacks.
+     * @param data
+     * @param mac
+     * @param key
+     * @return
+     * @throws InvalidKeyException
+     * @throws NoSuchAlgorithmException 
+     */
+    public static boolean compareMAC(byte[] data,byte[] mac,MacKey key) throws InvalidKeyException, NoSuchAlgorithmException {
+        return verifyMAC(data, 0, data.length, mac, 0, mac.length, key);
+    }
+    
+    /**
+     * Verifies the mac stored in mac[macOffset, macOffset+macLength) against the mac computed over data[offset, offset+length)
+     * using the session key handle key. Nothing is copied: data and mac may be two regions of the same received message.
+     * The MAC is computed once, by the keyed Mac of the calling thread, and compared in constant time.
+     * @param data          the buffer holding the authenticated data
+     * @param offset        the offset of the data
+     * @param length        the length of the data
+     * @param mac           the buffer holding the received MAC
+     * @param macOffset     the offset of the MAC
+     * @param macLength     the length of the MAC
+     * @param key           the session key handle
+     * @return whether the MAC is valid or not
+     * @throws InvalidKeyException
+     * @throws NoSuchAlgorithmException 
+     */
+    public static boolean verifyMAC(byte[] data,int offset,int length,byte[] mac,int macOffset,int macLength,MacKey key) throws InvalidKeyException, NoSuchAlgorithmException {
+        Mac m = key.getMac();
+        m.update(data, offset, length);
+        byte[] computedMac = m.doFinal();
+        return constantTimeEquals(computedMac, mac, macOffset, macLength);
+    }
+    
+    /**
+     * HKDF-Extract (RFC 5869): concentrates the entropy of the input keying material into a pseudorandom key
+     * @param salt  the salt, null or empty for a string of zeros as long as the MAC output
+     * @param ikm   the input keying material, e.g. a Diffie-Hellman shared secret
+     * @param alg   the HMAC algorithm, e.g. "HmacSHA256"
+     * @return  the pseudorandom key
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static byte[] hkdfExtract(byte[] salt,byte[] ikm,String alg) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac m = getThreadMac(alg);
+        if(salt == null || salt.length == 0) salt = new byte[m.getMacLength()];
+        m.init(new SecretKeySpec(salt,alg));
+        return m.doFinal(ikm);
+    }
+    
+    /**
+     * HKDF-Expand (RFC 5869): expands a pseudorandom key into length bytes of output keying material
+     * @param prk       the pseudorandom key returned by hkdfExtract
+     * @param info      the context information binding the keys to their use, may be null
+     * @param length    the number of bytes, at most 255 times the MAC output length
+     * @param alg       the HMAC algorithm, e.g. "HmacSHA256"
+     * @return  the output keying material
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static byte[] hkdfExpand(byte[] prk,byte[] info,int length,String alg) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac m = getThreadMac(alg);
+        int macLength = m.getMacLength();
+        if(length < 0 || length > 255*macLength) throw new IllegalArgumentException("invalid HKDF output length");
+        m.init(new SecretKeySpec(prk,alg));
+        byte[] okm = new byte[length];
+        byte[] t = new byte[0];
+        for(int pos = 0, i = 1; pos < length; pos+=macLength, ++i) {
+            m.update(t);
+            if(info != null) m.update(info);
+            m.update((byte)i);
+            t = m.doFinal();
+            System.arraycopy(t,0,okm,pos,Math.min(macLength,length-pos));
+        }
+        return okm;
+    }
+    
+    /**
+     * HKDF (RFC 5869): derives length bytes of keying material from a shared secret, extracting and then expanding it
+     * @param salt      the salt, may be null
+     * @param ikm       the input keying material, e.g. a Diffie-Hellman shared secret
+     * @param info      the context information binding the keys to their use, may be null
+     * @param length    the number of bytes to derive
+     * @param alg       the HMAC algorithm, e.g. "HmacSHA256"
+     * @return  the output keying material
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static byte[] hkdf(byte[] salt,byte[] ikm,byte[] info,int length,String alg) throws NoSuchAlgorithmException, InvalidKeyException {
+        return hkdfExpand(hkdfExtract(salt,ikm,alg),info,length,alg);
+    }
+    
+    /**
+     * Compares a with b[offset, offset+length) examining every byte whatever the position of the first difference
+     */
+    private static boolean constantTimeEquals(byte[] a,byte[] b,int offset,int length) {
+        if(a.length != length) return false;
+        int diff = 0;
+        for(int i = 0; i < length; ++i) diff |= a[i] ^ b[offset+i];
+        return diff == 0;
     }
 }
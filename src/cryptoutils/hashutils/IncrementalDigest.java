@@ -0,0 +1,110 @@
+package cryptoutils.hashutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Base class of the incremental hash and MAC computations: data is fed in any number of fragments
+ * and the result is produced by doFinal, without ever materializing the whole input.
+ * Instances are not thread-safe.
+ */
+public abstract class IncrementalDigest {
+    static final int BUFFER_SIZE = 64*1024;
+    static final long MAPPED_REGION_SIZE = 64L*1024*1024;
+
+    /**
+     * Feeds length bytes of data starting from offset
+     * @param data      the buffer
+     * @param offset    the offset in the buffer
+     * @param length    the number of bytes
+     * @return this object
+     */
+    public abstract IncrementalDigest update(byte[] data,int offset,int length);
+
+    /**
+     * Feeds all the remaining bytes of the ByteBuffer data, moving its position to its limit
+     * @param data the buffer, direct buffers are not copied into the heap
+     * @return this object
+     */
+    public abstract IncrementalDigest update(ByteBuffer data);
+
+    /**
+     * Completes the computation and resets this object, that can be used again
+     * @return the byte[] object representing the hash or the MAC
+     */
+    public abstract byte[] doFinal();
+
+    /**
+     * Discards the data fed so far
+     */
+    public abstract void reset();
+
+    /**
+     * @return the algorithm
+     */
+    public abstract String getAlgorithm();
+
+    /**
+     * @return the length in bytes of the result
+     */
+    public abstract int getLength();
+
+    /**
+     * Feeds the whole byte[] object data
+     * @param data the bytes
+     * @return this object
+     */
+    public IncrementalDigest update(byte[] data) {
+        return update(data,0,data.length);
+    }
+
+    /**
+     * Feeds everything read from in until its end, using a buffer of fixed size; in is not closed
+     * @param in the stream
+     * @return this object
+     * @throws IOException 
+     */
+    public IncrementalDigest update(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while((n = in.read(buffer)) >= 0) update(buffer,0,n);
+        return this;
+    }
+
+    /**
+     * Feeds everything read from in until its end, using a direct buffer of fixed size; in is not closed
+     * @param in the channel
+     * @return this object
+     * @throws IOException 
+     */
+    public IncrementalDigest update(ReadableByteChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while(in.read(buffer) >= 0) {
+            buffer.flip();
+            update(buffer);
+            buffer.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Feeds size bytes of the file starting from position, mapping the file in memory region by region,
+     * so that the data is neither copied into the heap nor read through a buffer
+     * @param file      the file channel
+     * @param position  the position of the first byte
+     * @param size      the number of bytes
+     * @return this object
+     * @throws IOException 
+     */
+    public IncrementalDigest update(FileChannel file,long position,long size) throws IOException {
+        long end = position+size;
+        for(long pos = position; pos < end; pos+=MAPPED_REGION_SIZE) {
+            long length = Math.min(MAPPED_REGION_SIZE,end-pos);
+            update(file.map(FileChannel.MapMode.READ_ONLY,pos,length));
+        }
+        return this;
+    }
+}
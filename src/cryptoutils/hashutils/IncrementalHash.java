@@ -0,0 +1,52 @@
+package cryptoutils.hashutils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Incremental hash computation, see HashManager.newHash
+ */
+public class IncrementalHash extends IncrementalDigest {
+    private final MessageDigest md;
+
+    /**
+     * @param alg the hash algorithm, e.g. "SHA-256"
+     * @throws NoSuchAlgorithmException 
+     */
+    public IncrementalHash(String alg) throws NoSuchAlgorithmException {
+        this.md = MessageDigest.getInstance(alg);
+    }
+
+    @Override
+    public IncrementalHash update(byte[] data,int offset,int length) {
+        md.update(data,offset,length);
+        return this;
+    }
+
+    @Override
+    public IncrementalHash update(ByteBuffer data) {
+        md.update(data);
+        return this;
+    }
+
+    @Override
+    public byte[] doFinal() {
+        return md.digest();
+    }
+
+    @Override
+    public void reset() {
+        md.reset();
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return md.getAlgorithm();
+    }
+
+    @Override
+    public int getLength() {
+        return md.getDigestLength();
+    }
+}
@@ -0,0 +1,54 @@
+package cryptoutils.hashutils;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Mac;
+
+/**
+ * Incremental MAC computation, see HashManager.newMAC
+ */
+public class IncrementalMAC extends IncrementalDigest {
+    private final Mac mac;
+
+    /**
+     * @param key the session key handle
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public IncrementalMAC(MacKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        this.mac = key.newMac();
+    }
+
+    @Override
+    public IncrementalMAC update(byte[] data,int offset,int length) {
+        mac.update(data,offset,length);
+        return this;
+    }
+
+    @Override
+    public IncrementalMAC update(ByteBuffer data) {
+        mac.update(data);
+        return this;
+    }
+
+    @Override
+    public byte[] doFinal() {
+        return mac.doFinal();
+    }
+
+    @Override
+    public void reset() {
+        mac.reset();
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return mac.getAlgorithm();
+    }
+
+    @Override
+    public int getLength() {
+        return mac.getMacLength();
+    }
+}
@@ -0,0 +1,76 @@
+package cryptoutils.hashutils;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Session handle of a MAC secret key, meant to be created once per session and used for every message.
+ * Each thread keeps its own Mac object initialized with this key: since doFinal resets the Mac to its
+ * initialized state, the HMAC key preprocessing (ipad/opad) is done only once per thread.
+ */
+public class MacKey {
+    private final SecretKeySpec keySpec;
+    private final String alg;
+    private final ThreadLocal<Mac> mac = new ThreadLocal<>();
+
+    /**
+     * @param key   the secret key
+     * @param alg   the MAC algorithm, e.g. "HmacSHA256"
+     */
+    public MacKey(byte[] key,String alg) {
+        this.keySpec = new SecretKeySpec(key,alg);
+        this.alg = alg;
+    }
+
+    /**
+     * @return the MAC algorithm
+     */
+    public String getAlgorithm() {
+        return alg;
+    }
+
+    /**
+     * @return the SecretKeySpec object representing the key
+     */
+    public SecretKeySpec getKeySpec() {
+        return keySpec;
+    }
+
+    /**
+     * Returns the Mac object of the calling thread, already initialized with this key
+     * @return the Mac object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     */
+    Mac getMac() throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac m = mac.get();
+        if(m == null) {
+            m = Mac.getInstance(alg);
+            m.init(keySpec);
+            mac.set(m);
+        }
+        return m;
+    }
+    
+    /**
+     * Returns a new Mac object initialized with this key and owned by the caller.
+     * When the provider allows it, the thread Mac is cloned so that the key preprocessing is not repeated
+     * @return the Mac object
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    Mac newMac() throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac m = getMac();
+        try {
+            Mac copy = (Mac)m.clone();
+            copy.reset();
+            return copy;
+        } catch(CloneNotSupportedException e) {
+            Mac fresh = Mac.getInstance(alg);
+            fresh.init(keySpec);
+            return fresh;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package cryptoutils.hashutils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Merkle tree over the chunks of a file, with the same shape and node format of TreeHash:
+ * the root of a tree built with a given algorithm and chunk size equals the TreeHash of the file with that leaf size.
+ * The per-chunk digests are kept in a compact index file, so that a file of which only a few chunks changed is
+ * re-verified or updated by rehashing those chunks and their paths to the root only.
+ * Single chunks can be proven to belong to the file by means of a proof made of sibling hashes.
+ * Instances are not thread-safe.
+ * <p>
+ * Index file format: the magic bytes "CUMT", a version byte (1), the algorithm as modified UTF-8 (DataOutput.writeUTF),
+ * the chunk size (int), the file size (long), the number of chunks (int) and finally the chunk hashes, in order.
+ */
+public class MerkleTree {
+    private static final int MAGIC = 0x43554d54;
+    private static final byte VERSION = 1;
+    private final TreeHash hasher;
+    private long fileSize;
+    private final List<byte[][]> levels = new ArrayList<>();
+
+    private MerkleTree(String alg,int chunkSize) throws NoSuchAlgorithmException {
+        this.hasher = new TreeHash(alg,chunkSize,ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the tree of a whole file, hashing its chunks in parallel
+     * @param file      the file
+     * @param alg       the hash algorithm, e.g. "SHA-256"
+     * @param chunkSize the chunk size in bytes
+     * @return the MerkleTree object
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     */
+    public static MerkleTree build(Path file,String alg,int chunkSize) throws NoSuchAlgorithmException, IOException {
+        MerkleTree tree = new MerkleTree(alg,chunkSize);
+        try(FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)) {
+            tree.fileSize = ch.size();
+            tree.levels.add(tree.hashChunks(ch,0,tree.getChunkCount()));
+        }
+        tree.buildUpperLevels();
+        return tree;
+    }
+
+    /**
+     * Loads a tree from an index file written by save
+     * @param index the index file
+     * @return the MerkleTree object
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     */
+    public static MerkleTree load(Path index) throws NoSuchAlgorithmException, IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            if(in.readInt() != MAGIC || in.readByte() != VERSION) throw new IOException("not a Merkle tree index");
+            MerkleTree tree = new MerkleTree(in.readUTF(),in.readInt());
+            tree.fileSize = in.readLong();
+            int count = in.readInt();
+            if(count != tree.getChunkCount()) throw new IOException("corrupted Merkle tree index");
+            int hashSize = tree.hasher.digest().getDigestLength();
+            byte[][] leaves = new byte[count][hashSize];
+            for(int i = 0; i < count; ++i) in.readFully(leaves[i]);
+            tree.levels.add(leaves);
+            tree.buildUpperLevels();
+            return tree;
+        }
+    }
+
+    /**
+     * Writes the chunk hashes into an index file
+     * @param index the index file
+     * @throws IOException
+     */
+    public void save(Path index) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(index)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(hasher.getAlgorithm());
+            out.writeInt(hasher.getLeafSize());
+            out.writeLong(fileSize);
+            byte[][] leaves = levels.get(0);
+            out.writeInt(leaves.length);
+            for(byte[] leaf : leaves) out.write(leaf);
+        }
+    }
+
+    /**
+     * @return the root hash
+     */
+    public byte[] getRoot() {
+        return levels.get(levels.size()-1)[0].clone();
+    }
+
+    /**
+     * @return the hash algorithm
+     */
+    public String getAlgorithm() {
+        return hasher.getAlgorithm();
+    }
+
+    /**
+     * @return the chunk size in bytes
+     */
+    public int getChunkSize() {
+        return hasher.getLeafSize();
+    }
+
+    /**
+     * @return the number of chunks
+     */
+    public int getChunkCount() {
+        return (int)hasher.getLeafCount(fileSize);
+    }
+
+    /**
+     * @return the size of the file the tree refers to
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Rehashes the given chunks of the file and the paths from them to the root.
+     * If the file size changed, the chunks from the old last one to the new end are rehashed as well.
+     * @param file      the file
+     * @param chunks    the indexes of the chunks that changed
+     * @throws IOException
+     */
+    public void update(Path file,int... chunks) throws IOException {
+        try(FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)) {
+            long newSize = ch.size();
+            if(newSize != fileSize) {
+                byte[][] oldLeaves = levels.get(0);
+                int keep = Math.max(0,Math.min(oldLeaves.length,(int)hasher.getLeafCount(newSize))-1);
+                fileSize = newSize;
+                byte[][] leaves = new byte[getChunkCount()][];
+                System.arraycopy(oldLeaves,0,leaves,0,Math.min(keep,leaves.length));
+                byte[][] tail = hashChunks(ch,keep,leaves.length);
+                System.arraycopy(tail,0,leaves,keep,tail.length);
+                levels.clear();
+                levels.add(leaves);
+                buildUpperLevels();
+            }
+            MessageDigest md = hasher.digest();
+            for(int chunk : chunks) {
+                checkIndex(chunk);
+                levels.get(0)[chunk] = TreeHash.hashLeaf(md,readChunk(ch,chunk));
+                updatePath(md,chunk);
+            }
+        }
+    }
+
+    /**
+     * Verifies a single chunk of the file against the stored hash, reading that chunk only
+     * @param file  the file
+     * @param chunk the chunk index
+     * @return whether the chunk is unchanged or not
+     * @throws IOException
+     */
+    public boolean verifyChunk(Path file,int chunk) throws IOException {
+        checkIndex(chunk);
+        try(FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)) {
+            if(ch.size() != fileSize) return false;
+            byte[] hash = TreeHash.hashLeaf(hasher.digest(),readChunk(ch,chunk));
+            return MessageDigest.isEqual(hash,levels.get(0)[chunk]);
+        }
+    }
+
+    /**
+     * Rehashes every chunk of the file in parallel and returns the indexes of those that differ from the stored hashes
+     * @param file the file
+     * @return the indexes of the changed chunks, in increasing order; if the file size changed, every chunk from the last
+     *         common one up to the end of the longer of the two files is reported as changed
+     * @throws IOException
+     */
+    public int[] findChangedChunks(Path file) throws IOException {
+        try(FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)) {
+            final byte[][] leaves = levels.get(0);
+            long size = ch.size();
+            final int common = (size == fileSize)?leaves.length:(int)Math.min(leaves.length-1,hasher.getLeafCount(size)-1);
+            final byte[][] current = hashChunks(ch,0,Math.max(common,0));
+            int count = (int)Math.max(leaves.length,hasher.getLeafCount(size));
+            return IntStream.range(0,count)
+                    .filter(i -> i >= common || !MessageDigest.isEqual(current[i],leaves[i]))
+                    .toArray();
+        }
+    }
+
+    /**
+     * Returns the proof of a chunk: the sibling hashes on the path from the chunk to the root, bottom up
+     * @param chunk the chunk index
+     * @return the proof, to be checked by means of verifyProof
+     */
+    public byte[][] getProof(int chunk) {
+        checkIndex(chunk);
+        List<byte[]> proof = new ArrayList<>();
+        int pos = chunk;
+        for(int l = 0; l < levels.size()-1; ++l) {
+            byte[][] level = levels.get(l);
+            int sibling = pos^1;
+            if(sibling < level.length) proof.add(level[sibling].clone());
+            pos/=2;
+        }
+        return proof.toArray(new byte[proof.size()][]);
+    }
+
+    /**
+     * Verifies that chunkData is the chunk at position chunk of a file whose tree has the given root
+     * @param alg           the hash algorithm of the tree
+     * @param chunkData     the chunk bytes
+     * @param chunk         the chunk index
+     * @param chunkCount    the number of chunks of the file
+     * @param proof         the proof returned by getProof
+     * @param root          the trusted root hash
+     * @return whether the chunk is proven or not
+     * @throws NoSuchAlgorithmException
+     */
+    public static boolean verifyProof(String alg,byte[] chunkData,int chunk,int chunkCount,byte[][] proof,byte[] root) throws NoSuchAlgorithmException {
+        if(chunk < 0 || chunk >= chunkCount) return false;
+        MessageDigest md = MessageDigest.getInstance(alg);
+        byte[] hash = TreeHash.hashLeaf(md,ByteBuffer.wrap(chunkData));
+        int pos = chunk, size = chunkCount, used = 0;
+        while(size > 1) {
+            if((pos&1) == 1) {
+                if(used == proof.length) return false;
+                hash = TreeHash.hashNode(md,proof[used++],hash);
+            } else if(pos+1 < size) {
+                if(used == proof.length) return false;
+                hash = TreeHash.hashNode(md,hash,proof[used++]);
+            }
+            pos/=2;
+            size = (size+1)/2;
+        }
+        return used == proof.length && MessageDigest.isEqual(hash,root);
+    }
+
+    private void checkIndex(int chunk) {
+        if(chunk < 0 || chunk >= getChunkCount()) throw new IndexOutOfBoundsException("chunk "+chunk);
+    }
+
+    private ByteBuffer readChunk(FileChannel ch,int chunk) throws IOException {
+        long offset = (long)chunk*hasher.getLeafSize();
+        int length = (int)Math.min(hasher.getLeafSize(),fileSize-offset);
+        return ch.map(FileChannel.MapMode.READ_ONLY,offset,length);
+    }
+
+    private byte[][] hashChunks(final FileChannel ch,final int from,int to) throws IOException {
+        try {
+            return IntStream.range(from,to).parallel().mapToObj(i -> {
+                try {
+                    return TreeHash.hashLeaf(hasher.digest(),readChunk(ch,i));
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toArray(byte[][]::new);
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void buildUpperLevels() {
+        MessageDigest md = hasher.digest();
+        while(levels.get(levels.size()-1).length > 1) {
+            byte[][] below = levels.get(levels.size()-1);
+            byte[][] level = new byte[(below.length+1)/2][];
+            for(int i = 0; i < level.length; ++i)
+                level[i] = (2*i+1 < below.length)?TreeHash.hashNode(md,below[2*i],below[2*i+1]):below[2*i];
+            levels.add(level);
+        }
+    }
+
+    private void updatePath(MessageDigest md,int chunk) {
+        int pos = chunk;
+        for(int l = 0; l < levels.size()-1; ++l) {
+            byte[][] below = levels.get(l);
+            int parent = pos/2;
+            int left = parent*2;
+            levels.get(l+1)[parent] = (left+1 < below.length)?TreeHash.hashNode(md,below[left],below[left+1]):below[left];
+            pos = parent;
+        }
+    }
+}
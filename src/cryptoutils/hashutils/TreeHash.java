@@ -0,0 +1,203 @@
+package cryptoutils.hashutils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tree hashing mode: the input is split into leaves hashed in parallel on a ForkJoinPool, and the
+ * leaf hashes are combined Merkle-style, so that the digest of large inputs scales with the cores.
+ * The output is deterministic and does not depend on the number of threads:
+ * <ul>
+ * <li>the input is split into leaves of leafSize bytes, the last one may be shorter; an empty input is a single empty leaf</li>
+ * <li>the hash of a leaf is H(0x00 || leaf)</li>
+ * <li>the hash of an inner node is H(0x01 || left || right)</li>
+ * <li>a tree over n &gt; 1 leaves has as left subtree the tree over the first k leaves, where k is the largest power of two
+ * smaller than n, and as right subtree the tree over the remaining ones (the same shape of RFC 6962 Merkle trees)</li>
+ * </ul>
+ * The result is the hash of the root. It differs from the plain hash of the input and depends on both the algorithm and the leaf size.
+ */
+public class TreeHash {
+    public static final int DEFAULT_LEAF_SIZE = 1024*1024;
+    static final byte LEAF_PREFIX = 0x00;
+    static final byte NODE_PREFIX = 0x01;
+    private final String alg;
+    private final int leafSize;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<MessageDigest> digests = new ThreadLocal<>();
+
+    /**
+     * @param alg       the hash algorithm, e.g. "SHA-256"
+     * @param leafSize  the leaf size in bytes
+     * @param pool      the pool hashing the leaves
+     * @throws NoSuchAlgorithmException
+     */
+    public TreeHash(String alg,int leafSize,ForkJoinPool pool) throws NoSuchAlgorithmException {
+        if(leafSize < 1) throw new IllegalArgumentException("leafSize must be positive");
+        MessageDigest.getInstance(alg);
+        this.alg = alg;
+        this.leafSize = leafSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Tree hash with leaves of DEFAULT_LEAF_SIZE bytes computed on the common ForkJoinPool
+     * @param alg the hash algorithm, e.g. "SHA-256"
+     * @throws NoSuchAlgorithmException
+     */
+    public TreeHash(String alg) throws NoSuchAlgorithmException {
+        this(alg,DEFAULT_LEAF_SIZE,ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return the hash algorithm
+     */
+    public String getAlgorithm() {
+        return alg;
+    }
+
+    /**
+     * @return the leaf size in bytes
+     */
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    /**
+     * Computes the tree hash of the byte[] object data
+     * @param data the bytes to be hashed
+     * @return the root hash
+     */
+    public byte[] hash(final byte[] data) {
+        return compute(data.length,new LeafSource() {
+            @Override
+            public ByteBuffer leaf(long offset,int length) {
+                return ByteBuffer.wrap(data,(int)offset,length);
+            }
+        });
+    }
+
+    /**
+     * Computes the tree hash of a whole file, mapping every leaf in memory
+     * @param file the file to be hashed
+     * @return the root hash
+     * @throws IOException
+     */
+    public byte[] hashFile(Path file) throws IOException {
+        try(final FileChannel ch = FileChannel.open(file,StandardOpenOption.READ)) {
+            return compute(ch.size(),new LeafSource() {
+                @Override
+                public ByteBuffer leaf(long offset,int length) throws IOException {
+                    return ch.map(FileChannel.MapMode.READ_ONLY,offset,length);
+                }
+            });
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param size the input size
+     * @return the number of leaves of an input of size bytes
+     */
+    long getLeafCount(long size) {
+        return (size == 0)?1:(size+leafSize-1)/leafSize;
+    }
+
+    /**
+     * @return the MessageDigest object of the calling thread
+     */
+    MessageDigest digest() {
+        MessageDigest md = digests.get();
+        if(md == null) {
+            try {
+                md = MessageDigest.getInstance(alg);
+            } catch(NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            digests.set(md);
+        }
+        return md;
+    }
+
+    /**
+     * @param md    the MessageDigest object
+     * @param leaf  the leaf bytes
+     * @return the hash of the leaf
+     */
+    static byte[] hashLeaf(MessageDigest md,ByteBuffer leaf) {
+        md.update(LEAF_PREFIX);
+        md.update(leaf);
+        return md.digest();
+    }
+
+    /**
+     * @param md    the MessageDigest object
+     * @param left  the hash of the left child
+     * @param right the hash of the right child
+     * @return the hash of the inner node
+     */
+    static byte[] hashNode(MessageDigest md,byte[] left,byte[] right) {
+        md.update(NODE_PREFIX);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+
+    /**
+     * @param n the number of leaves, at least 2
+     * @return the number of leaves of the left subtree
+     */
+    static long split(long n) {
+        return Long.highestOneBit(n-1);
+    }
+
+    private byte[] compute(long size,LeafSource source) {
+        return pool.invoke(new SubtreeTask(source,size,0,getLeafCount(size)));
+    }
+
+    private interface LeafSource {
+        ByteBuffer leaf(long offset,int length) throws IOException;
+    }
+
+    private class SubtreeTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+        private final LeafSource source;
+        private final long size;
+        private final long from;
+        private final long to;
+
+        SubtreeTask(LeafSource source,long size,long from,long to) {
+            this.source = source;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected byte[] compute() {
+            if(to-from == 1) {
+                long offset = from*leafSize;
+                int length = (int)Math.min(leafSize,size-offset);
+                try {
+                    return hashLeaf(digest(),source.leaf(offset,length));
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            long mid = from+split(to-from);
+            SubtreeTask right = new SubtreeTask(source,size,mid,to);
+            right.fork();
+            byte[] leftHash = new SubtreeTask(source,size,from,mid).compute();
+            byte[] rightHash = right.join();
+            return hashNode(digest(),leftHash,rightHash);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.nio.ByteBuffer;
 import java.security.*;
 import java.util.Arrays;
 import cryptoutils.hashutils.HashManager;
+import cryptoutils.hashutils.MacKey;
 import java.time.Instant;
 
 public class MessageBuilder {
@@ -112,6 +113,19 @@ public class MessageBuilder {
         return concatBytes(msg, mac);
     }
     
+    /**
+     * Computes the MAC msg by means of the session key handle key and concatenate to the end
+     * @param msg
+     * @param key the session key handle to use
+     * @return  
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException 
+     */
+    public static byte[] insertMAC(byte[] msg,MacKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        byte[] mac = HashManager.doMAC(msg, key);
+        return concatBytes(msg, mac);
+    }
+    
     /**
      * Extracts an hash of size hashSize starting from position pos
      * @param msg